@@ -0,0 +1,128 @@
+package com.lukasdietrich.lambdatra;
+
+import java.util.List;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.AttributeKey;
+
+/**
+ * {@link HttpContentCompressor} following a {@link CompressionPolicy}.
+ * It can be told to pass the next response through unchanged, so its
+ * body may be written as something other than 
+ * {@link io.netty.handler.codec.http.HttpContent}.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+class CompressionHandler extends HttpContentCompressor {
+	
+	private static final AttributeKey<Boolean> SKIP = AttributeKey.valueOf("lambdatra.compression.skip");
+	
+	private final CompressionPolicy policy;
+	private boolean skip;
+	
+	CompressionHandler(CompressionPolicy policy) {
+		super(policy.getLevel());
+		
+		this.policy = policy;
+	}
+	
+	/**
+	 * Lets the next response written to the channel pass uncompressed.
+	 * 
+	 * @param channel channel of the response
+	 */
+	static void skipNext(Channel channel) {
+		channel.attr(SKIP).set(Boolean.TRUE);
+	}
+	
+	/**
+	 * Tells whether or not the next response on the channel
+	 * is going to pass uncompressed.
+	 * 
+	 * @param channel channel of the response
+	 * @return true if {@link #skipNext(Channel)} has been called
+	 */
+	static boolean isSkipping(Channel channel) {
+		return channel.attr(SKIP).get() != null;
+	}
+	
+	/**
+	 * Tells whether or not a response with a body that is not yet
+	 * encoded would be compressed for the given request. Partial
+	 * responses are never compressed, as their ranges refer to
+	 * the unencoded body.
+	 * 
+	 * @param req the request being answered
+	 * @param res the response to send
+	 * @param length size of the body, or -1 if it is not known in advance
+	 * @return true if the client accepts compression and the {@link CompressionPolicy} allows it
+	 */
+	boolean willCompress(HttpRequest req, HttpResponse res, long length) {
+		String acceptEncoding = req.headers().get(Names.ACCEPT_ENCODING);
+		
+		return acceptEncoding != null 
+				&& !res.headers().contains(Names.CONTENT_ENCODING)
+				&& !res.headers().contains(Names.CONTENT_RANGE)
+				&& policy.shouldCompress(res.headers().get(Names.CONTENT_TYPE), length)
+				&& determineWrapper(acceptEncoding) != null;
+	}
+	
+	@Override
+	protected void encode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+		if (msg instanceof HttpResponse)
+			skip = ctx.channel().attr(SKIP).getAndRemove() != null;
+		
+		super.encode(ctx, msg, out);
+	}
+	
+	/**
+	 * A strong entity tag identifies the exact bytes of a response,
+	 * so it is weakened when the body gets compressed.
+	 * Responses are only compressed if the {@link CompressionPolicy}
+	 * allows it. Caches are
+	 * told that the body depends on the accepted encodings, in
+	 * addition to any header the response already varies on.
+	 */
+	@Override
+	protected Result beginEncode(HttpResponse headers, String acceptEncoding) throws Exception {
+		if (skip || headers.headers().contains(Names.CONTENT_RANGE)
+				|| !policy.shouldCompress(headers.headers().get(Names.CONTENT_TYPE), HttpHeaders.getContentLength(headers, -1)))
+			return null;
+		
+		Result result = super.beginEncode(headers, acceptEncoding);
+		
+		if (result != null) {
+			String etag = headers.headers().get(Names.ETAG);
+			
+			if (etag != null && !etag.startsWith("W/"))
+				headers.headers().set(Names.ETAG, "W/" + etag);
+			
+			if (!varies(headers, Names.ACCEPT_ENCODING))
+				headers.headers().add(Names.VARY, Names.ACCEPT_ENCODING);
+		}
+		
+		return result;
+	}
+	
+	private static boolean varies(HttpResponse headers, String name) {
+		for (String header : headers.headers().getAll(Names.VARY)) {
+			for (String value : header.split(",")) {
+				value = value.trim();
+				
+				if (value.equals("*") || value.equalsIgnoreCase(name))
+					return true;
+			}
+		}
+		
+		return false;
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.lukasdietrich.lambdatra;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides which responses are compressed on the fly.
+ * <br>
+ * A response is compressed if its content type is allowed and not
+ * denied and its body, if the size is known in advance, is at least
+ * {@link #getMinSize()} bytes. Responses without a content type are
+ * not compressed. Content types are matched without parameters and a
+ * pattern may start or end with <code>*</code> to match a suffix or
+ * a prefix, e.g. <code>text/*</code> or <code>*+json</code>.
+ * <br>
+ * All setters return the {@link CompressionPolicy} for chaining.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class CompressionPolicy {
+	
+	private boolean enabled = true;
+	private int level = 6;
+	private int minSize = 1024;
+	
+	private List<String> allowed = Arrays.asList(
+			"text/*", "application/json", "application/javascript", "application/xml", 
+			"image/svg+xml", "*+json", "*+xml");
+	
+	private List<String> denied = Arrays.asList("text/event-stream");
+	
+	/**
+	 * Enables or disables compression as a whole
+	 * 
+	 * @param enabled false to never compress responses
+	 * @return {@link CompressionPolicy} for chaining
+	 */
+	public CompressionPolicy setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		return this;
+	}
+	
+	/**
+	 * Returns whether compression is enabled
+	 * 
+	 * @return true if responses may be compressed
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Sets the deflate compression level
+	 * 
+	 * @param level 1 for the fastest, 9 for the best compression
+	 * @return {@link CompressionPolicy} for chaining
+	 * @throws IllegalArgumentException if the level is not between 1 and 9
+	 */
+	public CompressionPolicy setLevel(int level) {
+		if (level < 1 || level > 9)
+			throw new IllegalArgumentException("Compression level must be between 1 and 9 !");
+		
+		this.level = level;
+		return this;
+	}
+	
+	/**
+	 * Returns the deflate compression level
+	 * 
+	 * @return level between 1 and 9
+	 */
+	public int getLevel() {
+		return level;
+	}
+	
+	/**
+	 * Sets the size below which a body is sent uncompressed,
+	 * as the overhead would outweigh the savings.
+	 * 
+	 * @param minSize size in bytes
+	 * @return {@link CompressionPolicy} for chaining
+	 */
+	public CompressionPolicy setMinSize(int minSize) {
+		if (minSize < 0)
+			throw new IllegalArgumentException("Minimum size must not be negative !");
+		
+		this.minSize = minSize;
+		return this;
+	}
+	
+	/**
+	 * Returns the minimum size of a compressed body
+	 * 
+	 * @return size in bytes
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+	
+	/**
+	 * Replaces the content types which may be compressed
+	 * 
+	 * @param types content type patterns
+	 * @return {@link CompressionPolicy} for chaining
+	 */
+	public CompressionPolicy setAllowed(String... types) {
+		this.allowed = Arrays.asList(types);
+		return this;
+	}
+	
+	/**
+	 * Replaces the content types which are never compressed,
+	 * even if they are allowed
+	 * 
+	 * @param types content type patterns
+	 * @return {@link CompressionPolicy} for chaining
+	 */
+	public CompressionPolicy setDenied(String... types) {
+		this.denied = Arrays.asList(types);
+		return this;
+	}
+	
+	/**
+	 * Tells whether or not a response should be compressed.
+	 * 
+	 * @param mime content type of the response, may be null
+	 * @param length size of the body, or -1 if it is not known in advance
+	 * @return true if compression pays off
+	 */
+	public boolean shouldCompress(String mime, long length) {
+		if (!enabled || mime == null || (length >= 0 && length < minSize))
+			return false;
+		
+		int semicolon = mime.indexOf(';');
+		String type = (semicolon < 0 ? mime : mime.substring(0, semicolon)).trim().toLowerCase();
+		
+		return matches(allowed, type) && !matches(denied, type);
+	}
+	
+	private static boolean matches(List<String> patterns, String type) {
+		for (String pattern : patterns) {
+			if (pattern.endsWith("*")) {
+				if (type.startsWith(pattern.substring(0, pattern.length() - 1)))
+					return true;
+			} else if (pattern.startsWith("*")) {
+				if (type.endsWith(pattern.substring(1)))
+					return true;
+			} else if (type.equals(pattern)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+}
@@ -0,0 +1,149 @@
+package com.lukasdietrich.lambdatra;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpHeaders.Values;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * Immutable response, that is built once and written to any
+ * number of channels.
+ * <br>
+ * Headers are prepared for every connection header a response may
+ * need and the body is kept in a single buffer, so sending it only
+ * takes a duplicate of the buffer. Unless the response is marked as
+ * compressible, it is never compressed.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public final class ConstantResponse {
+	
+	private final HttpResponse keepAlive;
+	private final HttpResponse close;
+	private final HttpResponse keepAlive10;
+	private final ByteBuf body;
+	private final boolean compress;
+	
+	/**
+	 * @param status status of the response
+	 * @param headers headers of the response
+	 * @param body body of the response
+	 */
+	public ConstantResponse(HttpResponseStatus status, Map<String, String> headers, byte[] body) {
+		this(head(status, headers), Unpooled.unreleasableBuffer(Unpooled.directBuffer(body.length).writeBytes(body)), false);
+	}
+	
+	/**
+	 * @param status status of the response
+	 * @param text utf8 encoded body of the response
+	 */
+	public ConstantResponse(HttpResponseStatus status, String text) {
+		this(status, Collections.emptyMap(), text.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Creates a response of a head and a body, which is released by
+	 * {@link #release()}. Pending writes keep their own references.
+	 * 
+	 * @param head status and headers of the response, which are copied
+	 * @param body body of the response
+	 * @param compress whether the body may be compressed
+	 */
+	public ConstantResponse(HttpResponse head, ByteBuf body, boolean compress) {
+		this.body = body;
+		this.compress = compress;
+		
+		this.keepAlive = copy(head, body.readableBytes(), null);
+		this.close = copy(head, body.readableBytes(), Values.CLOSE);
+		this.keepAlive10 = copy(head, body.readableBytes(), Values.KEEP_ALIVE);
+	}
+	
+	private static HttpResponse head(HttpResponseStatus status, Map<String, String> headers) {
+		HttpResponse head = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+		headers.forEach(head.headers()::set);
+		return head;
+	}
+	
+	private static HttpResponse copy(HttpResponse source, int length, String connection) {
+		HttpResponse head = new DefaultHttpResponse(HttpVersion.HTTP_1_1, source.getStatus());
+		head.headers().set(source.headers());
+		head.headers().remove(Names.TRANSFER_ENCODING);
+		
+		if (source.getStatus().code() != HttpResponseStatus.NOT_MODIFIED.code())
+			HttpHeaders.setContentLength(head, length);
+		
+		if (connection != null) {
+			head.headers().set(Names.CONNECTION, connection);
+		} else {
+			head.headers().remove(Names.CONNECTION);
+		}
+		
+		return head;
+	}
+	
+	/**
+	 * Returns the shared headers matching a request. They must not be changed.
+	 * 
+	 * @param req the request being answered
+	 * @param keepAlive whether the connection is kept open
+	 * @return response headers
+	 */
+	HttpResponse head(HttpRequest req, boolean keepAlive) {
+		if (!keepAlive)
+			return close;
+		
+		return req.getProtocolVersion().isKeepAliveDefault() ? this.keepAlive : keepAlive10;
+	}
+	
+	/**
+	 * Returns a retained duplicate of the body to write.
+	 * 
+	 * @return response body
+	 */
+	ByteBuf body() {
+		return body.duplicate().retain();
+	}
+	
+	/**
+	 * @return whether the body may be compressed
+	 */
+	boolean isCompressible() {
+		return compress;
+	}
+	
+	/**
+	 * @return length of the body in bytes
+	 */
+	public int length() {
+		return body.readableBytes();
+	}
+	
+	/**
+	 * Acquires another reference, that is given up by {@link #release()}.
+	 * 
+	 * @return this
+	 */
+	public ConstantResponse retain() {
+		body.retain();
+		return this;
+	}
+	
+	/**
+	 * Releases the body once all pending writes are done.
+	 */
+	public void release() {
+		body.release();
+	}
+
+}
@@ -1,19 +1,38 @@
 package com.lukasdietrich.lambdatra;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
 
 import java.lang.reflect.Constructor;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+import com.lukasdietrich.lambdatra.reaction.http.AsyncHttpAdapter;
+import com.lukasdietrich.lambdatra.reaction.http.AsyncHttpCallback;
+import com.lukasdietrich.lambdatra.reaction.http.AsyncMiddlewareAdapter;
+import com.lukasdietrich.lambdatra.reaction.http.AsyncMiddlewareCallback;
+import com.lukasdietrich.lambdatra.reaction.http.CachedHttpAdapter;
+import com.lukasdietrich.lambdatra.reaction.http.CoalescingHttpAdapter;
+import com.lukasdietrich.lambdatra.reaction.http.ConstantAdapter;
 import com.lukasdietrich.lambdatra.reaction.http.HttpAdapter;
 import com.lukasdietrich.lambdatra.reaction.http.HttpCallback;
 import com.lukasdietrich.lambdatra.reaction.http.MiddlewareAdapter;
 import com.lukasdietrich.lambdatra.reaction.http.MiddlewareCallback;
+import com.lukasdietrich.lambdatra.reaction.http.Offload;
+import com.lukasdietrich.lambdatra.reaction.http.StreamAdapter;
+import com.lukasdietrich.lambdatra.reaction.http.StreamCallback;
 import com.lukasdietrich.lambdatra.reaction.http.WrappedRequest;
 import com.lukasdietrich.lambdatra.reaction.websocket.WebSocket;
 import com.lukasdietrich.lambdatra.reaction.websocket.WsAdapter;
@@ -40,29 +59,48 @@ public class Lambdatra<S> {
 	 * {@link Lambdatra}.{@link #create(int, Consumer)}
 	 * 
 	 * @param port port to listen for connections
+	 * @param config {@link ServerConfig} to tune the server
 	 * @param sessions {@link SessionStore} to use
 	 * @param context a {@link Consumer} callback, that exposes the {@link Lambdatra} instance
 	 * @param <S> class of session value
 	 */
-	public static <S> void create(int port, SessionStore<S> sessions, Consumer<Lambdatra<S>> context) {
-		Lambdatra<S> instance = new Lambdatra<>(sessions);
+	public static <S> void create(int port, ServerConfig config, SessionStore<S> sessions, Consumer<Lambdatra<S>> context) {
+		Lambdatra<S> instance = new Lambdatra<>(config, sessions);
 		context.accept(instance);
 		
 		try {
-			instance.serv
-				.bind(port)
-				.sync()
-				.channel()
-				.closeFuture()
-				.sync();
+			List<Channel> channels = new ArrayList<>();
+			
+			for (int i = 0; i < instance.acceptors; i++)
+				channels.add(instance.serv.bind(port).sync().channel());
+			
+			for (Channel ch : channels)
+				ch.closeFuture().sync();
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		} finally {
 			instance.bossGroup.shutdownGracefully();
 			instance.workerGroup.shutdownGracefully();
+			
+			for (Executor executor : instance.executors.values())
+				if (executor instanceof ExecutorService)
+					((ExecutorService) executor).shutdown();
 		}
 	}
 	
+	/**
+	 * Shorthand for {@link #create(int, ServerConfig, SessionStore, Consumer)}
+	 * using a default {@link ServerConfig}.
+	 * 
+	 * @param port port to listen for connections
+	 * @param sessions {@link SessionStore} to use
+	 * @param context a {@link Consumer} callback, that exposes the {@link Lambdatra} instance
+	 * @param <S> class of session value
+	 */
+	public static <S> void create(int port, SessionStore<S> sessions, Consumer<Lambdatra<S>> context) {
+		create(port, new ServerConfig(), sessions, context);
+	}
+	
 	/**
 	 * Shorthand for {@link #create(int, SessionStore, Consumer)} using
 	 * a {@link DefaultSessionStore}.
@@ -77,22 +115,41 @@ public class Lambdatra<S> {
 	private ServerBootstrap serv;
 	private Router router;
 	private SessionStore<S> sessions;
+	private Map<String, Executor> executors;
 	
 	private EventLoopGroup bossGroup;
 	private EventLoopGroup workerGroup;
+	private int acceptors;
 	
-	private Lambdatra(SessionStore<S> sessions) {
+	private Lambdatra(ServerConfig config, SessionStore<S> sessions) {
 		this.router = new Router();
 		this.sessions = sessions;
+		this.executors = new HashMap<>();
+		
+		Transport transport = Transport.select(config);
 		
-		this.bossGroup = new NioEventLoopGroup(1);
-		this.workerGroup = new NioEventLoopGroup();
+		this.acceptors = transport.acceptors(config.getAcceptors());
+		this.bossGroup = transport.newGroup(config.getBossThreads());
+		this.workerGroup = transport.newGroup(config.getWorkerThreads());
 		
 		this.serv = new ServerBootstrap();
 		
 		serv.group(bossGroup, workerGroup)
-			.channel(NioServerSocketChannel.class)
-			.childHandler(new NettyInitializer(router));
+			.option(ChannelOption.ALLOCATOR, config.getAllocator())
+			.childOption(ChannelOption.ALLOCATOR, config.getAllocator())
+			.childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+			.childHandler(new NettyInitializer(router, config, sessions));
+		
+		if (config.getBacklog() > 0)
+			serv.option(ChannelOption.SO_BACKLOG, config.getBacklog());
+		
+		if (config.getReceiveBufferSize() > 0)
+			serv.childOption(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+		
+		if (config.getSendBufferSize() > 0)
+			serv.childOption(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+		
+		transport.configure(serv, acceptors);
 	}
 
 	/**
@@ -162,6 +219,86 @@ public class Lambdatra<S> {
 		return this;
 	}
 	
+	/**
+	 * Binds a given {@link HttpCallback} to a path with {@link RouteOptions}.
+	 * <br>
+	 * If the options name an executor, the callback runs there
+	 * instead of on the event loop, so it may block. If they name a
+	 * {@link com.lukasdietrich.lambdatra.reaction.http.ResponseCache},
+	 * responses are served from it whenever possible. If they coalesce
+	 * requests, the callback runs only once for concurrent requests with
+	 * the same key.
+	 * 
+	 * @param pattern url pattern to bind this handler to
+	 * @param options {@link RouteOptions} for this route
+	 * @param cb {@link HttpCallback}, that has to respond to a {@link WrappedRequest}
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> on(String pattern, RouteOptions options, HttpCallback<S> cb) {
+		Executor executor = resolveExecutor(options);
+		
+		if (!options.isCompress()) {
+			HttpCallback<S> inner = cb;
+			
+			cb = (req, res) -> {
+				res.setCompression(false);
+				inner.call(req, res);
+			};
+		}
+		
+		if (options.getCache() != null) {
+			if (options.getCoalesce() != null)
+				throw new InvalidParameterException("Cached routes can not be coalesced !");
+			
+			if (executor != null)
+				throw new InvalidParameterException("Cached routes can not run on an executor !");
+			
+			this.router.addRoute(new Route(pattern, new CachedHttpAdapter<>(cb, sessions, options.getCache())));
+			return this;
+		}
+		
+		if (executor != null)
+			return onAsync(pattern, options.getCoalesce(), Offload.http(cb, executor));
+		
+		if (options.getCoalesce() != null) {
+			HttpCallback<S> inner = cb;
+			
+			return onAsync(pattern, options.getCoalesce(), (req, res) -> {
+				inner.call(req, res);
+				return CompletableFuture.completedFuture(null);
+			});
+		}
+		
+		return on(pattern, cb);
+	}
+	
+	/**
+	 * Binds a {@link ConstantResponse} to a path. The response is built
+	 * once and written without running any callback, e.g. for health checks.
+	 * 
+	 * @param pattern url pattern to bind this response to
+	 * @param status status of the response
+	 * @param headers headers of the response
+	 * @param body body of the response
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> onStatic(String pattern, HttpResponseStatus status, Map<String, String> headers, byte[] body) {
+		return onStatic(pattern, new ConstantResponse(status, headers, body));
+	}
+	
+	/**
+	 * Binds a {@link ConstantResponse} to a path.
+	 * 
+	 * @see #onStatic(String, HttpResponseStatus, Map, byte[])
+	 * @param pattern url pattern to bind this response to
+	 * @param response the response
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> onStatic(String pattern, ConstantResponse response) {
+		this.router.addRoute(new Route(pattern, new ConstantAdapter(response)));
+		return this;
+	}
+	
 	/**
 	 * Binds a given {@link MiddlewareCallback} to a path.
 	 * It will work similar to {@link #on(String, HttpCallback)},
@@ -177,4 +314,150 @@ public class Lambdatra<S> {
 		return this;
 	}
 	
+	/**
+	 * Binds a given {@link MiddlewareCallback} to a path with {@link RouteOptions}.
+	 * It will work similar to {@link #on(String, RouteOptions, HttpCallback)},
+	 * but responses of middlewares can neither be cached nor coalesced.
+	 * 
+	 * @param pattern url pattern to bind this handler to
+	 * @param options {@link RouteOptions} for this route
+	 * @param cb {@link MiddlewareCallback}, that has to respond to a {@link WrappedRequest}
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> use(String pattern, RouteOptions options, MiddlewareCallback<S> cb) {
+		if (options.getCache() != null)
+			throw new InvalidParameterException("Middlewares can not be cached !");
+		
+		if (options.getCoalesce() != null)
+			throw new InvalidParameterException("Middlewares can not be coalesced !");
+		
+		Executor executor = resolveExecutor(options);
+		
+		if (!options.isCompress()) {
+			MiddlewareCallback<S> inner = cb;
+			
+			cb = (req, res) -> {
+				res.setCompression(false);
+				return inner.call(req, res);
+			};
+		}
+		
+		if (executor != null)
+			return useAsync(pattern, Offload.middleware(cb, executor));
+		
+		return use(pattern, cb);
+	}
+	
+	/**
+	 * Binds a given {@link AsyncHttpCallback} to a path.
+	 * It will work similar to {@link #on(String, HttpCallback)},
+	 * but the response is sent once the returned future completes.
+	 * 
+	 * @param pattern url pattern to bind this handler to
+	 * @param cb {@link AsyncHttpCallback}, that has to respond to a {@link WrappedRequest}
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> onAsync(String pattern, AsyncHttpCallback<S> cb) {
+		this.router.addRoute(new Route(pattern, new AsyncHttpAdapter<>(cb, sessions)));
+		return this;
+	}
+	
+	/**
+	 * Binds a given {@link AsyncHttpCallback} to a path with {@link RouteOptions}.
+	 * Asynchronous callbacks do not run on an executor and their
+	 * responses can not be cached, but they may be coalesced.
+	 * 
+	 * @see RouteOptions#setCoalesce(java.util.function.Function)
+	 * @param pattern url pattern to bind this handler to
+	 * @param options {@link RouteOptions} for this route
+	 * @param cb {@link AsyncHttpCallback}, that has to respond to a {@link WrappedRequest}
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> onAsync(String pattern, RouteOptions options, AsyncHttpCallback<S> cb) {
+		if (options.getExecutorName() != null || options.getExecutor() != null)
+			throw new InvalidParameterException("Asynchronous callbacks can not run on an executor !");
+		
+		if (options.getCache() != null)
+			throw new InvalidParameterException("Asynchronous callbacks can not be cached !");
+		
+		if (!options.isCompress()) {
+			AsyncHttpCallback<S> inner = cb;
+			
+			cb = (req, res) -> {
+				res.setCompression(false);
+				return inner.call(req, res);
+			};
+		}
+		
+		return onAsync(pattern, options.getCoalesce(), cb);
+	}
+	
+	private Lambdatra<S> onAsync(String pattern, Function<? super HttpRequest, String> coalesce, AsyncHttpCallback<S> cb) {
+		if (coalesce == null)
+			return onAsync(pattern, cb);
+		
+		this.router.addRoute(new Route(pattern, new CoalescingHttpAdapter<>(cb, sessions, coalesce)));
+		return this;
+	}
+	
+	/**
+	 * Binds a given {@link AsyncMiddlewareCallback} to a path.
+	 * It will work similar to {@link #use(String, MiddlewareCallback)},
+	 * but whether the request is fulfilled is decided by the
+	 * returned future.
+	 * 
+	 * @param pattern url pattern to bind this handler to
+	 * @param cb {@link AsyncMiddlewareCallback}, that has to respond to a {@link WrappedRequest}
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> useAsync(String pattern, AsyncMiddlewareCallback<S> cb) {
+		this.router.addRoute(new Route(pattern, new AsyncMiddlewareAdapter<>(cb, sessions)));
+		return this;
+	}
+	
+	/**
+	 * Binds a given {@link StreamCallback} to a path.
+	 * <br>
+	 * Request bodies are not aggregated, but passed to the returned
+	 * {@link com.lukasdietrich.lambdatra.reaction.http.BodyHandler} as they
+	 * arrive and are not limited by {@link ServerConfig#getMaxBodySize()}.
+	 * This only applies if it is the first route matching a request,
+	 * otherwise the aggregated body is passed as a single chunk.
+	 * 
+	 * @param pattern url pattern to bind this handler to
+	 * @param cb {@link StreamCallback}, that has to respond to a {@link WrappedRequest}
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> onStream(String pattern, StreamCallback<S> cb) {
+		this.router.addRoute(new Route(pattern, new StreamAdapter<>(cb, sessions)));
+		return this;
+	}
+	
+	/**
+	 * Registers an {@link Executor} by name to run blocking callbacks on.
+	 * See {@link Workers} for bounded and virtual thread executors.
+	 * <br>
+	 * Registered {@link ExecutorService}s are shut down with the server.
+	 * 
+	 * @param name name to refer to in {@link RouteOptions#setExecutor(String)}
+	 * @param executor the executor
+	 * @return {@link Lambdatra} for chaining
+	 */
+	public Lambdatra<S> executor(String name, Executor executor) {
+		this.executors.put(name, executor);
+		return this;
+	}
+	
+	private Executor resolveExecutor(RouteOptions options) {
+		if (options.getExecutorName() == null)
+			return options.getExecutor();
+		
+		Executor executor = executors.get(options.getExecutorName());
+		
+		if (executor == null)
+			throw new InvalidParameterException(String.format("Unknown executor %s !", options.getExecutorName()));
+		
+		return executor;
+	}
+	
 }
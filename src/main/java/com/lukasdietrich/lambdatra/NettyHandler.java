@@ -1,20 +1,46 @@
 package com.lukasdietrich.lambdatra;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiConsumer;
 
-import com.lukasdietrich.lambdatra.routing.MatchedRoute;
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.routing.RouteMatches;
 import com.lukasdietrich.lambdatra.routing.Router;
+import com.lukasdietrich.lambdatra.session.SessionStore;
 
-import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpHeaders.Values;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.cookie.Cookie;
+import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateEvent;
 
 /**
  * Request handler middleware for underlying
@@ -25,17 +51,413 @@ import io.netty.handler.codec.http.websocketx.WebSocketFrame;
  */
 public class NettyHandler extends SimpleChannelInboundHandler<Object> {
 	
+	private static final int CHUNK_SIZE = 8192;
+	
+	private static final ConstantResponse NOT_FOUND = 
+			new ConstantResponse(HttpResponseStatus.NOT_FOUND, "Not found.");
+	private static final ConstantResponse INTERNAL_SERVER_ERROR = 
+			new ConstantResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Internal server error.");
+	private static final ConstantResponse SERVICE_UNAVAILABLE = 
+			new ConstantResponse(HttpResponseStatus.SERVICE_UNAVAILABLE, "Service unavailable.");
+	
 	private Router router;
+	private ServerConfig config;
+	private SessionStore<?> sessions;
+	private RouteMatches matches;
 	private BiConsumer<ChannelHandlerContext, WebSocketFrame> wshandler;
 	
-	public NettyHandler(Router router) {
+	private int served;
+	
+	private FullHttpRequest current;
+	private int position;
+	private boolean suspended;
+	private boolean streaming;
+	private Queue<FullHttpRequest> backlog;
+	
+	/**
+	 * @param router routes to dispatch to
+	 * @param config server configuration
+	 * @param sessions store to prefetch sessions from before dispatching, or null
+	 */
+	public NettyHandler(Router router, ServerConfig config, SessionStore<?> sessions) {
 		this.router = router;
+		this.config = config;
+		this.sessions = sessions;
+		this.matches = new RouteMatches();
+		this.backlog = new ArrayDeque<>();
 	}
 	
 	public void onWsFrame(BiConsumer<ChannelHandlerContext, WebSocketFrame> listener) {
 		this.wshandler = listener;
 	}
 	
+	/**
+	 * Writes a complete response to a request and either keeps the
+	 * connection open for further requests or closes it, depending on
+	 * the request headers and the configured keep-alive limits.
+	 * 
+	 * @param ctx {@link ChannelHandlerContext} to write to
+	 * @param req the request being answered
+	 * @param res the response to send
+	 * @return {@link ChannelFuture} of the write
+	 */
+	public ChannelFuture send(ChannelHandlerContext ctx, HttpRequest req, FullHttpResponse res) {
+		setContentLength(res, res.content().readableBytes());
+		
+		return close(ctx.writeAndFlush(res), keepAlive(req, res));
+	}
+	
+	/**
+	 * Writes a {@link ConstantResponse}. Its shared headers are passed
+	 * by the compressor untouched and the body is a duplicate of the
+	 * constant buffer. Compressible responses the compressor would 
+	 * compress get a copy of the headers instead, as it changes them.
+	 * 
+	 * @see #send(ChannelHandlerContext, HttpRequest, FullHttpResponse)
+	 * @param ctx {@link ChannelHandlerContext} to write to
+	 * @param req the request being answered
+	 * @param res the response to send
+	 * @return {@link ChannelFuture} of the write
+	 */
+	public ChannelFuture send(ChannelHandlerContext ctx, HttpRequest req, ConstantResponse res) {
+		boolean keepAlive = keepAlive(req);
+		HttpResponse head = res.head(req, keepAlive);
+		
+		if (res.isCompressible()) {
+			CompressionHandler compressor = ctx.pipeline().get(CompressionHandler.class);
+			
+			if (compressor != null && !CompressionHandler.isSkipping(ctx.channel()) 
+					&& compressor.willCompress(req, head, res.length())) {
+				FullHttpResponse copy = new DefaultFullHttpResponse(head.getProtocolVersion(), head.getStatus(), res.body());
+				copy.headers().set(head.headers());
+				
+				return close(ctx.writeAndFlush(copy), keepAlive);
+			}
+		}
+		
+		CompressionHandler.skipNext(ctx.channel());
+		ctx.write(head);
+		
+		return close(ctx.writeAndFlush(new DefaultLastHttpContent(res.body())), keepAlive);
+	}
+	
+	/**
+	 * Writes the headers and the content of a response as separate
+	 * messages.
+	 * 
+	 * @see #send(ChannelHandlerContext, HttpRequest, FullHttpResponse)
+	 * @param ctx {@link ChannelHandlerContext} to write to
+	 * @param req the request being answered
+	 * @param res the response headers to send
+	 * @param content the response body
+	 * @return {@link ChannelFuture} of the write
+	 */
+	public ChannelFuture send(ChannelHandlerContext ctx, HttpRequest req, HttpResponse res, ByteBuf content) {
+		setContentLength(res, content.readableBytes());
+		
+		boolean keepAlive = keepAlive(req, res);
+		ctx.write(res);
+		
+		return close(ctx.writeAndFlush(new DefaultLastHttpContent(content)), keepAlive);
+	}
+	
+	/**
+	 * Writes the headers of a response followed by a region of a file.
+	 * <br>
+	 * If the content will not be compressed, the region is transferred
+	 * by the kernel without being copied into user space. Otherwise
+	 * it is read in chunks to be passed through the compressor.
+	 * The file is closed once it has been written.
+	 * 
+	 * @see #send(ChannelHandlerContext, HttpRequest, FullHttpResponse)
+	 * @param ctx {@link ChannelHandlerContext} to write to
+	 * @param req the request being answered
+	 * @param res the response headers to send
+	 * @param file file to send
+	 * @param offset position of the first byte to send
+	 * @param length amount of bytes to send
+	 * @return {@link ChannelFuture} of the write
+	 * @throws IOException if the file can not be read
+	 */
+	public ChannelFuture sendFile(ChannelHandlerContext ctx, HttpRequest req, HttpResponse res, 
+			FileChannel file, long offset, long length) throws IOException {
+		CompressionHandler compressor = ctx.pipeline().get(CompressionHandler.class);
+		
+		if (compressor != null && !CompressionHandler.isSkipping(ctx.channel()) 
+				&& compressor.willCompress(req, res, length)) {
+			if (ctx.pipeline().get(ChunkedWriteHandler.class) == null)
+				ctx.pipeline().addBefore(ctx.name(), "chunked", new ChunkedWriteHandler());
+			
+			HttpChunkedInput input = new HttpChunkedInput(new ChunkedNioFile(file, offset, length, CHUNK_SIZE));
+			
+			HttpHeaders.setContentLength(res, length);
+			boolean keepAlive = keepAlive(req, res);
+			ctx.write(res);
+			
+			return close(ctx.writeAndFlush(input), keepAlive);
+		}
+		
+		return sendParts(ctx, req, res, Collections.singletonList(new DefaultFileRegion(file, offset, length)), length);
+	}
+	
+	/**
+	 * Writes the headers of a response followed by a sequence of
+	 * {@link ByteBuf}s and {@link FileRegion}s as the body, which 
+	 * is not compressed.
+	 * 
+	 * @see #send(ChannelHandlerContext, HttpRequest, FullHttpResponse)
+	 * @param ctx {@link ChannelHandlerContext} to write to
+	 * @param req the request being answered
+	 * @param res the response headers to send
+	 * @param parts buffers and file regions to send
+	 * @param length total amount of bytes of all parts
+	 * @return {@link ChannelFuture} of the write
+	 */
+	public ChannelFuture sendParts(ChannelHandlerContext ctx, HttpRequest req, HttpResponse res, List<?> parts, long length) {
+		HttpHeaders.setContentLength(res, length);
+		
+		boolean keepAlive = keepAlive(req, res);
+		CompressionHandler.skipNext(ctx.channel());
+		
+		ctx.write(res);
+		
+		for (Object part : parts)
+			ctx.write(part);
+		
+		return close(ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT), keepAlive);
+	}
+	
+	/**
+	 * Lets the next response written to the channel pass
+	 * uncompressed, regardless of the {@link CompressionPolicy}.
+	 * 
+	 * @param ctx {@link ChannelHandlerContext} of the response
+	 */
+	public void skipCompression(ChannelHandlerContext ctx) {
+		CompressionHandler.skipNext(ctx.channel());
+	}
+	
+	/**
+	 * Decides whether or not the connection is kept open after the
+	 * response and sets the connection header accordingly. Every call
+	 * counts towards the keep-alive limit, so it must be called
+	 * exactly once per response.
+	 * 
+	 * @param req the request being answered
+	 * @param res the response to send
+	 * @return true if the connection is kept open
+	 */
+	public boolean keepAlive(HttpRequest req, HttpResponse res) {
+		boolean keepAlive = keepAlive(req);
+		
+		if (!keepAlive) {
+			res.headers().set(Names.CONNECTION, Values.CLOSE);
+		} else if (!req.getProtocolVersion().isKeepAliveDefault()) {
+			res.headers().set(Names.CONNECTION, Values.KEEP_ALIVE);
+		}
+		
+		return keepAlive;
+	}
+	
+	private boolean keepAlive(HttpRequest req) {
+		return HttpHeaders.isKeepAlive(req)
+				&& (config.getMaxKeepAliveRequests() <= 0 || ++served < config.getMaxKeepAliveRequests());
+	}
+	
+	/**
+	 * A not modified response has no body, so its content length
+	 * would describe the cached representation. It is omitted.
+	 */
+	private static void setContentLength(HttpResponse res, long length) {
+		if (res.getStatus().code() != HttpResponseStatus.NOT_MODIFIED.code())
+			HttpHeaders.setContentLength(res, length);
+	}
+	
+	/**
+	 * Returns the path of a request uri omitting the query part.
+	 * 
+	 * @param uri request uri
+	 * @return the raw path
+	 */
+	public static String path(String uri) {
+		int end = uri.indexOf('?');
+		return end < 0 ? uri : uri.substring(0, end);
+	}
+	
+	private ChannelFuture close(ChannelFuture future, boolean keepAlive) {
+		if (!keepAlive)
+			future.addListener(ChannelFutureListener.CLOSE);
+		
+		return future;
+	}
+	
+	/**
+	 * Marks the current request as pending. It is retained until
+	 * {@link #resume(ChannelHandlerContext, boolean)} is called and
+	 * further requests on this connection are queued meanwhile, so
+	 * responses keep their order.
+	 * <br>
+	 * Has to be called on the event loop of the channel while
+	 * an {@link Adapter} is handling a request.
+	 * 
+	 * @param ctx {@link ChannelHandlerContext} of the request
+	 */
+	public void suspend(ChannelHandlerContext ctx) {
+		if (!suspended) {
+			suspended = true;
+			current.retain();
+			ctx.channel().config().setAutoRead(false);
+		}
+	}
+	
+	/**
+	 * Continues a request suspended with {@link #suspend(ChannelHandlerContext)}.
+	 * If it was not fulfilled, the next matching route is tried.
+	 * <br>
+	 * Has to be called on the event loop of the channel.
+	 * 
+	 * @param ctx {@link ChannelHandlerContext} of the request
+	 * @param fulfilled whether or not a response has been sent
+	 */
+	public void resume(ChannelHandlerContext ctx, boolean fulfilled) {
+		FullHttpRequest req = current;
+		suspended = false;
+		
+		try {
+			if (!fulfilled)
+				dispatch(ctx, position + 1);
+		} catch (Exception e) {
+			fail(ctx, e);
+		} finally {
+			req.release();
+			
+			if (!suspended) {
+				current = null;
+				drain(ctx);
+			}
+		}
+	}
+	
+	/**
+	 * Answers the current request with an internal server error, or
+	 * with service unavailable if an executor rejected the callback.
+	 * 
+	 * @param ctx {@link ChannelHandlerContext} of the request
+	 * @param cause reason of failure
+	 */
+	public void fail(ChannelHandlerContext ctx, Throwable cause) {
+		fail(ctx, current, cause);
+	}
+	
+	/**
+	 * Answers a request with an internal server error, or
+	 * with service unavailable if an executor rejected the callback.
+	 * 
+	 * @param ctx {@link ChannelHandlerContext} to write to
+	 * @param req the failed request
+	 * @param cause reason of failure
+	 */
+	public void fail(ChannelHandlerContext ctx, HttpRequest req, Throwable cause) {
+		while (cause instanceof CompletionException && cause.getCause() != null)
+			cause = cause.getCause();
+		
+		if (cause instanceof RejectedExecutionException) {
+			send(ctx, req, SERVICE_UNAVAILABLE);
+		} else {
+			cause.printStackTrace();
+			send(ctx, req, INTERNAL_SERVER_ERROR);
+		}
+	}
+	
+	/**
+	 * Whether or not a request may be answered right away. Otherwise
+	 * its response would overtake the one of an earlier request.
+	 * 
+	 * @return true if no request is pending or queued
+	 */
+	public boolean isIdle() {
+		return !suspended && !streaming && backlog.isEmpty();
+	}
+	
+	/**
+	 * Marks a streamed request as pending, which is answered
+	 * outside of this handler. Further requests are queued until
+	 * {@link #endStream(ChannelHandlerContext)} is called, while
+	 * the body is read as controlled by {@link #pauseStream(ChannelHandlerContext, boolean)}.
+	 * 
+	 * @param ctx any {@link ChannelHandlerContext} of the channel
+	 */
+	public void startStream(ChannelHandlerContext ctx) {
+		streaming = true;
+	}
+	
+	/**
+	 * Stops or continues reading the body of a streamed request.
+	 * May be called from any thread.
+	 * 
+	 * @param ctx any {@link ChannelHandlerContext} of the channel
+	 * @param paused true to stop reading
+	 */
+	public void pauseStream(ChannelHandlerContext ctx, boolean paused) {
+		if (!ctx.executor().inEventLoop()) {
+			ctx.executor().execute(() -> pauseStream(ctx, paused));
+			return;
+		}
+		
+		if (streaming)
+			ctx.channel().config().setAutoRead(!paused);
+	}
+	
+	/**
+	 * Finishes a streamed request started with {@link #startStream(ChannelHandlerContext)}
+	 * and continues with queued requests.
+	 * 
+	 * @param ctx any {@link ChannelHandlerContext} of the channel
+	 */
+	public void endStream(ChannelHandlerContext ctx) {
+		if (streaming) {
+			streaming = false;
+			drain(ctx.pipeline().context(this));
+		}
+	}
+	
+	private void drain(ChannelHandlerContext ctx) {
+		while (!suspended && !streaming && !backlog.isEmpty()) {
+			FullHttpRequest req = backlog.poll();
+			
+			try {
+				handleHTTP(ctx, req);
+			} catch (Exception e) {
+				ctx.fireExceptionCaught(e);
+			} finally {
+				req.release();
+			}
+		}
+		
+		if (!suspended && !streaming)
+			ctx.channel().config().setAutoRead(true);
+	}
+	
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		while (!backlog.isEmpty())
+			backlog.poll().release();
+		
+		super.channelInactive(ctx);
+	}
+	
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+		if (evt instanceof IdleStateEvent && wshandler == null) {
+			if (!suspended && !streaming)
+				ctx.close();
+			
+			return;
+		}
+		
+		super.userEventTriggered(ctx, evt);
+	}
+	
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
 		if (msg instanceof FullHttpRequest) {
@@ -50,16 +472,65 @@ public class NettyHandler extends SimpleChannelInboundHandler<Object> {
 	}
 	
 	private void handleHTTP(ChannelHandlerContext ctx, FullHttpRequest req) throws IOException {
-		for (MatchedRoute match : router.findRoute(req.getUri().split("\\?")[0])) {	
-			if (match.getRoute().getAdapter().call(this, ctx, req, match.getParams()))
-				return;
+		if (suspended || streaming) {
+			backlog.add(req.retain());
+			return;
 		}
 		
-		FullHttpResponse notFound = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND);
-		ByteBufUtil.writeUtf8(notFound.content(), "Not found.");
+		router.match(path(req.getUri()), matches);
+		current = req;
+		
+		try {
+			if (!prefetch(ctx, req))
+				dispatch(ctx, 0);
+		} finally {
+			if (!suspended)
+				current = null;
+		}
+	}
+	
+	/**
+	 * Lets the {@link SessionStore} fetch the session of a request
+	 * before any route handles it. Until the session is available,
+	 * the request is suspended and then dispatched from the start.
+	 * 
+	 * @param ctx {@link ChannelHandlerContext} of the request
+	 * @param req the request
+	 * @return true if the request has been suspended
+	 */
+	private boolean prefetch(ChannelHandlerContext ctx, FullHttpRequest req) {
+		String header;
+		
+		if (sessions == null || matches.size() == 0 || (header = req.headers().get(Names.COOKIE)) == null)
+			return false;
+		
+		for (Cookie cookie : ServerCookieDecoder.LAX.decode(header)) {
+			if (cookie.name().equals(sessions.getCookieKey())) {
+				CompletableFuture<?> future = sessions.prefetch(cookie.value());
+				
+				if (future == null || future.isDone())
+					return false;
+				
+				position = -1;
+				suspend(ctx);
+				future.whenComplete((session, e) -> ctx.executor().execute(() -> resume(ctx, false)));
+				
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private void dispatch(ChannelHandlerContext ctx, int from) throws IOException {
+		for (int i = from; i < matches.size(); i++) {
+			position = i;
+			
+			if (matches.getRoute(i).getAdapter().call(this, ctx, current, matches.getParams(i)))
+				return;
+		}
 		
-		ctx.writeAndFlush(notFound);
-		ctx.close();
+		send(ctx, current, NOT_FOUND);
 	}
 	
 	private void handleWebSocket(ChannelHandlerContext ctx, WebSocketFrame frame) {
@@ -1,12 +1,14 @@
 package com.lukasdietrich.lambdatra;
 
 import com.lukasdietrich.lambdatra.routing.Router;
+import com.lukasdietrich.lambdatra.session.SessionStore;
 
+import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * {@link ChannelInitializer} implementation for underlying
@@ -17,20 +19,67 @@ import io.netty.handler.codec.http.HttpServerCodec;
  */
 class NettyInitializer extends ChannelInitializer<SocketChannel> {
 
-	private final int MAX_BODY_SIZE = 65536;
 	private Router router;
+	private ServerConfig config;
+	private SessionStore<?> sessions;
 	
-	protected NettyInitializer(Router router) {
+	protected NettyInitializer(Router router, ServerConfig config, SessionStore<?> sessions) {
 		this.router = router;
+		this.config = config;
+		this.sessions = prefetches(sessions) ? sessions : null;
 	}
 	
 	@Override
 	protected void initChannel(SocketChannel ch) throws Exception {
-		ch.pipeline()
-			.addLast(new HttpServerCodec())
-			.addLast(new HttpObjectAggregator(MAX_BODY_SIZE))
-			.addLast(new HttpContentCompressor())
-			.addLast(new NettyHandler(router));
+		if (config.getWriteBufferHighWaterMark() > 0)
+			applyWaterMark(ch.config());
+		
+		if (config.getIdleTimeout() > 0)
+			ch.pipeline().addLast(new IdleStateHandler(0, 0, config.getIdleTimeout()));
+		
+		ch.pipeline().addLast(new HttpServerCodec());
+		
+		if (router.isStreaming())
+			ch.pipeline().addLast(new StreamDispatcher(router));
+		
+		ch.pipeline().addLast(new HttpObjectAggregator(config.getMaxBodySize()));
+		
+		if (config.getCompression().isEnabled())
+			ch.pipeline().addLast(new CompressionHandler(config.getCompression()));
+		
+		ch.pipeline().addLast(new NettyHandler(router, config, sessions));
+	}
+	
+	/**
+	 * Checks once whether a store overrides {@link SessionStore#prefetch(String)},
+	 * so requests need not be searched for session cookies otherwise.
+	 * 
+	 * @param sessions store to check
+	 * @return true if sessions should be prefetched
+	 */
+	private static boolean prefetches(SessionStore<?> sessions) {
+		try {
+			return sessions.getClass().getMethod("prefetch", String.class).getDeclaringClass() != SessionStore.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Netty rejects a high water mark below the current low one
+	 * and vice versa, so the order of updates depends on whether
+	 * the marks are raised or lowered.
+	 * 
+	 * @param cfg config of the accepted channel
+	 */
+	private void applyWaterMark(ChannelConfig cfg) {
+		if (config.getWriteBufferHighWaterMark() < cfg.getWriteBufferLowWaterMark()) {
+			cfg.setWriteBufferLowWaterMark(config.getWriteBufferLowWaterMark());
+			cfg.setWriteBufferHighWaterMark(config.getWriteBufferHighWaterMark());
+		} else {
+			cfg.setWriteBufferHighWaterMark(config.getWriteBufferHighWaterMark());
+			cfg.setWriteBufferLowWaterMark(config.getWriteBufferLowWaterMark());
+		}
 	}
 
 }
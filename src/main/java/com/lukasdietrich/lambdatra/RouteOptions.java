@@ -0,0 +1,156 @@
+package com.lukasdietrich.lambdatra;
+
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.lukasdietrich.lambdatra.reaction.http.CoalescingHttpAdapter;
+import com.lukasdietrich.lambdatra.reaction.http.ResponseCache;
+
+/**
+ * Per route options for {@link Lambdatra#on(String, RouteOptions, com.lukasdietrich.lambdatra.reaction.http.HttpCallback)}
+ * and {@link Lambdatra#use(String, RouteOptions, com.lukasdietrich.lambdatra.reaction.http.MiddlewareCallback)}.
+ * <br>
+ * All setters return the {@link RouteOptions} for chaining.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class RouteOptions {
+	
+	private String executorName;
+	private Executor executor;
+	private boolean compress = true;
+	private ResponseCache cache;
+	private Function<? super HttpRequest, String> coalesce;
+	
+	/**
+	 * Runs the callback on an executor registered with
+	 * {@link Lambdatra#executor(String, Executor)} instead of the
+	 * event loop. The response is still written on the event loop.
+	 * 
+	 * @param name name of the executor
+	 * @return {@link RouteOptions} for chaining
+	 */
+	public RouteOptions setExecutor(String name) {
+		this.executorName = name;
+		this.executor = null;
+		return this;
+	}
+	
+	/**
+	 * Runs the callback on the given {@link Executor} instead
+	 * of the event loop. The response is still written on the
+	 * event loop.
+	 * 
+	 * @param executor executor to run the callback on
+	 * @return {@link RouteOptions} for chaining
+	 */
+	public RouteOptions setExecutor(Executor executor) {
+		this.executor = executor;
+		this.executorName = null;
+		return this;
+	}
+	
+	/**
+	 * Returns the name of the executor, if set by name
+	 * 
+	 * @return executor name or null
+	 */
+	public String getExecutorName() {
+		return executorName;
+	}
+	
+	/**
+	 * Returns the executor, if set directly
+	 * 
+	 * @return executor or null
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * Enables or disables compression of the responses of this
+	 * route. Enabled responses are still subject to the
+	 * {@link CompressionPolicy} of the server.
+	 * 
+	 * @param compress false to never compress responses of this route
+	 * @return {@link RouteOptions} for chaining
+	 */
+	public RouteOptions setCompress(boolean compress) {
+		this.compress = compress;
+		return this;
+	}
+	
+	/**
+	 * Returns whether responses of this route may be compressed
+	 * 
+	 * @return false if compression is disabled for this route
+	 */
+	public boolean isCompress() {
+		return compress;
+	}
+	
+	/**
+	 * Serves responses of this route from a {@link ResponseCache}.
+	 * Only applies to {@link com.lukasdietrich.lambdatra.reaction.http.HttpCallback}s running on the event loop.
+	 * <br>
+	 * <b>Warning:</b> Responses are shared by all clients. Requests carrying
+	 * a session cookie are not cached, unless the cache varies on
+	 * <code>Cookie</code>, but responses personalized in any other way have
+	 * to be marked with <code>Cache-Control: private</code> !
+	 * 
+	 * @param cache cache of responses, which may be shared by routes
+	 * @return {@link RouteOptions} for chaining
+	 */
+	public RouteOptions setCache(ResponseCache cache) {
+		this.cache = cache;
+		return this;
+	}
+	
+	/**
+	 * Returns the response cache of this route
+	 * 
+	 * @return cache or null
+	 */
+	public ResponseCache getCache() {
+		return cache;
+	}
+	
+	/**
+	 * Coalesces concurrent GET requests of the same uri.
+	 * 
+	 * @see #setCoalesce(Function)
+	 * @param coalesce true to coalesce requests
+	 * @return {@link RouteOptions} for chaining
+	 */
+	public RouteOptions setCoalesce(boolean coalesce) {
+		return setCoalesce(coalesce ? CoalescingHttpAdapter::uri : null);
+	}
+	
+	/**
+	 * Runs the callback only once for concurrent requests with the same key.
+	 * Requests arriving while it runs are answered with a copy of its response.
+	 * The key has to cover everything the response depends on, and requests with
+	 * a null key are not coalesced.
+	 * 
+	 * @param key computes the key of a request
+	 * @return {@link RouteOptions} for chaining
+	 */
+	public RouteOptions setCoalesce(Function<? super HttpRequest, String> key) {
+		this.coalesce = key;
+		return this;
+	}
+	
+	/**
+	 * Returns the key of coalesced requests
+	 * 
+	 * @return key function or null
+	 */
+	public Function<? super HttpRequest, String> getCoalesce() {
+		return coalesce;
+	}
+	
+}
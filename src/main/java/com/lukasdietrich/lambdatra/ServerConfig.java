@@ -0,0 +1,349 @@
+package com.lukasdietrich.lambdatra;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Tuning options for a {@link Lambdatra} server.
+ * <br>
+ * All setters return the {@link ServerConfig} for chaining.
+ * 
+ * Eg.:
+ * <code>new ServerConfig().setIdleTimeout(30).setMaxKeepAliveRequests(1000)</code>
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class ServerConfig {
+	
+	private int maxKeepAliveRequests = 0;
+	private int idleTimeout = 60;
+	private boolean nativeTransport = false;
+	private int acceptors = 1;
+	
+	private int bossThreads = 1;
+	private int workerThreads = 0;
+	private int backlog = 0;
+	
+	private boolean tcpNoDelay = true;
+	private int receiveBufferSize = 0;
+	private int sendBufferSize = 0;
+	private int writeBufferLowWaterMark = 0;
+	private int writeBufferHighWaterMark = 0;
+	private boolean pooledAllocator;
+	
+	private int maxBodySize = 65536;
+	private CompressionPolicy compression = new CompressionPolicy();
+	
+	/**
+	 * Sets the number of requests served on a single
+	 * persistent connection before it is closed.
+	 * 
+	 * @param maxKeepAliveRequests maximum number of requests, or 0 for no limit
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+		this.maxKeepAliveRequests = maxKeepAliveRequests;
+		return this;
+	}
+	
+	/**
+	 * Returns the maximum number of requests per connection
+	 * 
+	 * @return maximum number of requests, or 0 for no limit
+	 */
+	public int getMaxKeepAliveRequests() {
+		return maxKeepAliveRequests;
+	}
+	
+	/**
+	 * Sets the time in seconds after which an idle
+	 * http connection is closed.
+	 * 
+	 * @param idleTimeout timeout in seconds, or 0 to keep idle connections open
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		return this;
+	}
+	
+	/**
+	 * Returns the idle timeout
+	 * 
+	 * @return timeout in seconds, or 0 if disabled
+	 */
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+	
+	/**
+	 * Enables netty's native epoll transport on Linux.
+	 * If the native library is not available, the server
+	 * falls back to NIO.
+	 * 
+	 * @param nativeTransport whether to prefer epoll over NIO
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setNativeTransport(boolean nativeTransport) {
+		this.nativeTransport = nativeTransport;
+		return this;
+	}
+	
+	/**
+	 * Returns whether the native transport is preferred
+	 * 
+	 * @return true if epoll should be used when available
+	 */
+	public boolean isNativeTransport() {
+		return nativeTransport;
+	}
+	
+	/**
+	 * Sets the number of acceptor channels bound to the port.
+	 * Values above 1 bind the port multiple times using
+	 * <code>SO_REUSEPORT</code> and only take effect with the
+	 * native transport.
+	 * 
+	 * @param acceptors number of acceptor channels
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setAcceptors(int acceptors) {
+		this.acceptors = acceptors;
+		return this;
+	}
+	
+	/**
+	 * Returns the number of acceptor channels
+	 * 
+	 * @return number of acceptors
+	 */
+	public int getAcceptors() {
+		return acceptors;
+	}
+	
+	/**
+	 * Sets the number of threads accepting connections.
+	 * It is raised to the number of acceptors, if lower.
+	 * 
+	 * @param bossThreads number of threads
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setBossThreads(int bossThreads) {
+		this.bossThreads = bossThreads;
+		return this;
+	}
+	
+	/**
+	 * Returns the number of threads accepting connections
+	 * 
+	 * @return number of threads
+	 */
+	public int getBossThreads() {
+		return Math.max(bossThreads, acceptors);
+	}
+	
+	/**
+	 * Sets the number of threads handling io and callbacks.
+	 * 
+	 * @param workerThreads number of threads, or 0 for twice the number of cores
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setWorkerThreads(int workerThreads) {
+		this.workerThreads = workerThreads;
+		return this;
+	}
+	
+	/**
+	 * Returns the number of threads handling io and callbacks
+	 * 
+	 * @return number of threads, or 0 for netty's default
+	 */
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+	
+	/**
+	 * Sets the length of the queue of pending connections
+	 * (<code>SO_BACKLOG</code>).
+	 * 
+	 * @param backlog queue length, or 0 for the system default
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setBacklog(int backlog) {
+		this.backlog = backlog;
+		return this;
+	}
+	
+	/**
+	 * Returns the length of the queue of pending connections
+	 * 
+	 * @return queue length, or 0 for the system default
+	 */
+	public int getBacklog() {
+		return backlog;
+	}
+	
+	/**
+	 * Enables or disables Nagle's algorithm (<code>TCP_NODELAY</code>)
+	 * on accepted connections.
+	 * 
+	 * @param tcpNoDelay true to send small packets immediately
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+		return this;
+	}
+	
+	/**
+	 * Returns whether <code>TCP_NODELAY</code> is set
+	 * 
+	 * @return true if Nagle's algorithm is disabled
+	 */
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+	
+	/**
+	 * Sets the socket receive buffer size (<code>SO_RCVBUF</code>).
+	 * 
+	 * @param receiveBufferSize size in bytes, or 0 for the system default
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+		return this;
+	}
+	
+	/**
+	 * Returns the socket receive buffer size
+	 * 
+	 * @return size in bytes, or 0 for the system default
+	 */
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+	
+	/**
+	 * Sets the socket send buffer size (<code>SO_SNDBUF</code>).
+	 * 
+	 * @param sendBufferSize size in bytes, or 0 for the system default
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setSendBufferSize(int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+		return this;
+	}
+	
+	/**
+	 * Returns the socket send buffer size
+	 * 
+	 * @return size in bytes, or 0 for the system default
+	 */
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+	
+	/**
+	 * Sets the water marks of the outbound buffer. A channel stops
+	 * being writable above the high mark and becomes writable again
+	 * below the low mark.
+	 * 
+	 * @param low low water mark in bytes
+	 * @param high high water mark in bytes
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setWriteBufferWaterMark(int low, int high) {
+		if (low > high)
+			throw new IllegalArgumentException("Low water mark must not exceed high water mark !");
+		
+		this.writeBufferLowWaterMark = low;
+		this.writeBufferHighWaterMark = high;
+		return this;
+	}
+	
+	/**
+	 * Returns the low water mark of the outbound buffer
+	 * 
+	 * @return size in bytes, or 0 for netty's default
+	 */
+	public int getWriteBufferLowWaterMark() {
+		return writeBufferLowWaterMark;
+	}
+	
+	/**
+	 * Returns the high water mark of the outbound buffer
+	 * 
+	 * @return size in bytes, or 0 for netty's default
+	 */
+	public int getWriteBufferHighWaterMark() {
+		return writeBufferHighWaterMark;
+	}
+	
+	/**
+	 * Chooses pooled buffer allocation instead of the default
+	 * allocator of Netty, which does not pool unless configured
+	 * by the <code>io.netty.allocator.type</code> system property.
+	 * 
+	 * @param pooledAllocator true for {@link PooledByteBufAllocator}, false for {@link ByteBufAllocator#DEFAULT}
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setPooledAllocator(boolean pooledAllocator) {
+		this.pooledAllocator = pooledAllocator;
+		return this;
+	}
+	
+	/**
+	 * Returns the {@link ByteBufAllocator} to use for channels
+	 * 
+	 * @return buffer allocator
+	 */
+	public ByteBufAllocator getAllocator() {
+		return (pooledAllocator) 
+				? PooledByteBufAllocator.DEFAULT 
+				: ByteBufAllocator.DEFAULT;
+	}
+	
+	/**
+	 * Sets the maximum size of an aggregated request body.
+	 * Larger requests are rejected.
+	 * 
+	 * @param maxBodySize size in bytes
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setMaxBodySize(int maxBodySize) {
+		this.maxBodySize = maxBodySize;
+		return this;
+	}
+	
+	/**
+	 * Returns the maximum size of an aggregated request body
+	 * 
+	 * @return size in bytes
+	 */
+	public int getMaxBodySize() {
+		return maxBodySize;
+	}
+	
+	/**
+	 * Sets the {@link CompressionPolicy} for responses
+	 * 
+	 * @param compression policy deciding which responses are compressed
+	 * @return {@link ServerConfig} for chaining
+	 */
+	public ServerConfig setCompression(CompressionPolicy compression) {
+		this.compression = compression;
+		return this;
+	}
+	
+	/**
+	 * Returns the {@link CompressionPolicy} for responses
+	 * 
+	 * @return compression policy
+	 */
+	public CompressionPolicy getCompression() {
+		return compression;
+	}
+	
+}
@@ -0,0 +1,113 @@
+package com.lukasdietrich.lambdatra;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+import java.nio.channels.ClosedChannelException;
+
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.reaction.http.StreamAdapter;
+import com.lukasdietrich.lambdatra.routing.RouteMatches;
+import com.lukasdietrich.lambdatra.routing.Router;
+
+/**
+ * Sits in front of the {@link HttpObjectAggregator} and takes over
+ * requests, whose first matching route is a {@link StreamAdapter}.
+ * Their body is passed on chunk by chunk, all other requests are
+ * aggregated as usual. So are streamed requests arriving while an
+ * earlier request is pending, which the {@link NettyHandler} queues
+ * to keep the order of responses.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+class StreamDispatcher extends ChannelInboundHandlerAdapter {
+	
+	private Router router;
+	private RouteMatches matches;
+	
+	private boolean streaming;
+	private StreamAdapter<?>.Stream stream;
+	
+	StreamDispatcher(Router router) {
+		this.router = router;
+		this.matches = new RouteMatches();
+	}
+	
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof HttpRequest) {
+			HttpRequest req = (HttpRequest) msg;
+			router.match(NettyHandler.path(req.getUri()), matches);
+			
+			NettyHandler handler = ctx.pipeline().get(NettyHandler.class);
+			Adapter first = (matches.size() > 0) ? matches.getRoute(0).getAdapter() : null;
+			
+			streaming = first instanceof StreamAdapter && handler.isIdle();
+			
+			if (!streaming) {
+				ctx.fireChannelRead(msg);
+				return;
+			}
+			
+			if (HttpHeaders.is100ContinueExpected(req))
+				ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+			
+			try {
+				stream = ((StreamAdapter<?>) first).open(handler, ctx, req, matches.getParams(0));
+			} catch (Exception e) {
+				handler.fail(ctx, req, e);
+			}
+			
+			if (!(msg instanceof HttpContent)) {
+				ReferenceCountUtil.release(msg);
+				return;
+			}
+		}
+		
+		if (streaming && msg instanceof HttpContent) {
+			try {
+				if (stream != null)
+					stream.content(((HttpContent) msg).content());
+				
+				if (msg instanceof LastHttpContent) {
+					streaming = false;
+					
+					if (stream != null)
+						stream.complete();
+					
+					stream = null;
+				}
+			} catch (Exception e) {
+				stream.fail(e);
+				stream = null;
+			} finally {
+				ReferenceCountUtil.release(msg);
+			}
+			
+			return;
+		}
+		
+		ctx.fireChannelRead(msg);
+	}
+	
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		if (stream != null) {
+			stream.fail(new ClosedChannelException());
+			stream = null;
+		}
+		
+		super.channelInactive(ctx);
+	}
+	
+}
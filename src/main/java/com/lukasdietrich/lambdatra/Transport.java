@@ -0,0 +1,109 @@
+package com.lukasdietrich.lambdatra;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * Socket transport used by the {@link ServerBootstrap}.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+enum Transport {
+	
+	/**
+	 * Java NIO selector based transport, available everywhere
+	 */
+	NIO {
+		
+		@Override
+		EventLoopGroup newGroup(int threads) {
+			return new NioEventLoopGroup(threads);
+		}
+		
+		@Override
+		void configure(ServerBootstrap serv, int acceptors) {
+			serv.channel(NioServerSocketChannel.class);
+		}
+		
+		@Override
+		int acceptors(int requested) {
+			return 1;
+		}
+		
+	},
+	
+	/**
+	 * Native epoll transport for Linux. Uses edge-triggered mode and
+	 * binds the port with <code>SO_REUSEPORT</code> when more than one
+	 * acceptor is requested, so the kernel balances new connections.
+	 */
+	EPOLL {
+		
+		@Override
+		EventLoopGroup newGroup(int threads) {
+			return new EpollEventLoopGroup(threads);
+		}
+		
+		@Override
+		void configure(ServerBootstrap serv, int acceptors) {
+			serv.channel(EpollServerSocketChannel.class)
+				.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+			
+			if (acceptors > 1)
+				serv.option(EpollChannelOption.SO_REUSEPORT, true);
+		}
+		
+		@Override
+		int acceptors(int requested) {
+			return Math.max(1, requested);
+		}
+		
+	};
+	
+	/**
+	 * Creates an {@link EventLoopGroup} for this transport.
+	 * 
+	 * @param threads number of threads, or 0 for netty's default
+	 * @return a new {@link EventLoopGroup}
+	 */
+	abstract EventLoopGroup newGroup(int threads);
+	
+	/**
+	 * Sets the server channel class and transport specific options.
+	 * 
+	 * @param serv bootstrap to configure
+	 * @param acceptors number of server channels that will be bound
+	 */
+	abstract void configure(ServerBootstrap serv, int acceptors);
+	
+	/**
+	 * Returns the number of server channels this transport
+	 * is able to bind to the same port.
+	 * 
+	 * @param requested configured number of acceptors
+	 * @return supported number of acceptors
+	 */
+	abstract int acceptors(int requested);
+	
+	/**
+	 * Picks the transport for a {@link ServerConfig}, falling back
+	 * to {@link #NIO} if the native library can not be loaded or
+	 * the JVM does not grant the raw memory access it relies on.
+	 * 
+	 * @param config server configuration
+	 * @return transport to use
+	 */
+	static Transport select(ServerConfig config) {
+		return (config.isNativeTransport() && Epoll.isAvailable() && PlatformDependent.hasUnsafe()) ? EPOLL : NIO;
+	}
+	
+}
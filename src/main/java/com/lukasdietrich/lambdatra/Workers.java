@@ -0,0 +1,76 @@
+package com.lukasdietrich.lambdatra;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factories for {@link ExecutorService}s to run blocking
+ * callbacks on, instead of the netty event loops.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public final class Workers {
+	
+	private Workers() {
+	}
+	
+	/**
+	 * Creates a fixed size thread pool with a bounded queue.
+	 * Tasks exceeding the queue are rejected and answered
+	 * with <code>503 Service Unavailable</code>.
+	 * 
+	 * @param name prefix of thread names
+	 * @param threads number of threads
+	 * @param queue maximum number of waiting tasks
+	 * @return a new {@link ExecutorService}
+	 */
+	public static ExecutorService bounded(String name, int threads, int queue) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<>(queue), factory(name));
+		
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	
+	/**
+	 * Creates an executor starting a virtual thread per task, if
+	 * the running JDK supports them. Otherwise a cached thread
+	 * pool is returned.
+	 * 
+	 * @param name prefix of thread names
+	 * @return a new {@link ExecutorService}
+	 */
+	public static ExecutorService virtual(String name) {
+		try {
+			Class<?> type = Class.forName("java.lang.Thread$Builder");
+			Method naming = type.getMethod("name", String.class, long.class);
+			Method factory = type.getMethod("factory");
+			
+			Object builder = naming.invoke(Thread.class.getMethod("ofVirtual").invoke(null), name + "-", 1L);
+			
+			return (ExecutorService) Executors.class
+					.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, factory.invoke(builder));
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(factory(name));
+		}
+	}
+	
+	private static ThreadFactory factory(String name) {
+		AtomicInteger count = new AtomicInteger();
+		
+		return r -> {
+			Thread t = new Thread(r, String.format("%s-%d", name, count.incrementAndGet()));
+			t.setDaemon(true);
+			return t;
+		};
+	}
+	
+}
@@ -4,9 +4,9 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 
 import java.io.IOException;
-import java.util.Map;
 
 import com.lukasdietrich.lambdatra.NettyHandler;
+import com.lukasdietrich.lambdatra.routing.PathParams;
 import com.lukasdietrich.lambdatra.routing.Route;
 
 /**
@@ -23,10 +23,21 @@ public abstract class Adapter {
 	 * @param handler {@link NettyHandler} middleware instance
 	 * @param ctx {@link ChannelHandlerContext} to handle io with
 	 * @param req a {@link FullHttpRequest} that represents an incoming request
-	 * @param params mapped data of url parameters
+	 * @param params url parameters of the matched {@link Route}
 	 * @return returns whether or not the request was fulfilled
 	 * @throws IOException may throw an exception on write failure
 	 */
-	public abstract boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, Map<String, String> params) throws IOException;
+	public abstract boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) throws IOException;
+	
+	/**
+	 * Returns whether this adapter wants to receive
+	 * request bodies as a stream of chunks instead of
+	 * an aggregated {@link FullHttpRequest}.
+	 * 
+	 * @return true for streaming adapters
+	 */
+	public boolean isStreaming() {
+		return false;
+	}
 	
 }
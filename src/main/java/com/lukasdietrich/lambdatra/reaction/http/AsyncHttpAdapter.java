@@ -0,0 +1,26 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.session.SessionStore;
+
+/**
+ * {@link Adapter} for {@link AsyncHttpCallback}
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class AsyncHttpAdapter<S> extends BaseAsyncHttpAdapter<S, AsyncHttpCallback<S>> {
+
+	public AsyncHttpAdapter(AsyncHttpCallback<S> callback, SessionStore<S> sessions) {
+		super(callback, sessions);
+	}
+
+	@Override
+	protected CompletableFuture<Boolean> handle(WrappedRequest<S> req, WrappedResponse<S> res) throws IOException {
+		return getCallback().call(req, res).thenApply(v -> true);
+	}
+
+}
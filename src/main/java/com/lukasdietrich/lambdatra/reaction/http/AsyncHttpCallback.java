@@ -0,0 +1,29 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous callback for HTTP requests.
+ * <br>
+ * The response is sent once the returned {@link CompletableFuture}
+ * completes, so the callback must not block while waiting for
+ * other services.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+@FunctionalInterface
+public interface AsyncHttpCallback<S> {
+
+	/**
+	 * Called on incoming http request.
+	 * 
+	 * @param req Request
+	 * @param res Response
+	 * @return a {@link CompletableFuture} completing when the response is ready
+	 * @throws IOException may throw an exception on write failure
+	 */
+	public CompletableFuture<?> call(WrappedRequest<S> req, WrappedResponse<S> res) throws IOException;
+	
+}
@@ -0,0 +1,25 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of {@link MiddlewareCallback}
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+@FunctionalInterface
+public interface AsyncMiddlewareCallback<S> {
+
+	/**
+	 * Called on incoming http request.
+	 * 
+	 * @param req Request
+	 * @param res Response
+	 * @return a {@link CompletableFuture} of whether or not the request was fulfilled
+	 * @throws IOException may throw an exception on write failure
+	 */
+	public CompletableFuture<Boolean> call(WrappedRequest<S> req, WrappedResponse<S> res) throws IOException;
+	
+}
@@ -0,0 +1,109 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import com.lukasdietrich.lambdatra.NettyHandler;
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.reaction.CallbackAdapter;
+import com.lukasdietrich.lambdatra.routing.PathParams;
+import com.lukasdietrich.lambdatra.session.SessionStore;
+
+/**
+ * Arbitrary {@link Adapter} for asynchronous http request/response communication.
+ * <br>
+ * The request is suspended on the {@link NettyHandler} while the callback
+ * is running and the response is written on the event loop of the channel
+ * once the returned {@link CompletableFuture} completes. Request and
+ * response wrappers are recycled afterwards, so they must not be used
+ * once the future is completed.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public abstract class BaseAsyncHttpAdapter<S, E> extends CallbackAdapter<E> {
+	
+	private SessionStore<S> sessions;
+	
+	public BaseAsyncHttpAdapter(E callback, SessionStore<S> sessions) {
+		super(callback);
+		
+		this.sessions = sessions;
+	}
+	
+	@Override
+	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) throws IOException {
+		WrappedRequest<S> wreq = WrappedRequest.newInstance(req, params, sessions, ctx.executor());
+		WrappedResponse<S> wres = WrappedResponse.newInstance(handler, ctx, wreq, sessions);
+		
+		CompletableFuture<Boolean> result;
+		
+		try {
+			result = handle(wreq, wres);
+			
+			if (result == null)
+				throw new NullPointerException("Asynchronous callback returned no future !");
+		} catch (IOException | RuntimeException e) {
+			wres.discard();
+			
+			if (wres.isCommitted())
+				ctx.close();
+			
+			wres.recycle();
+			wreq.recycle();
+			throw e;
+		}
+		
+		handler.suspend(ctx);
+		
+		result.whenCompleteAsync((fulfilled, error) -> {
+			boolean done = true;
+			
+			try {
+				if (error != null) {
+					wres.discard();
+					
+					if (wres.isCommitted()) {
+						error.printStackTrace();
+						ctx.close();
+					} else {
+						handler.fail(ctx, error);
+					}
+				} else if (Boolean.TRUE.equals(fulfilled) || wres.isCommitted()) {
+					try {
+						wres.send();
+					} catch (IOException | RuntimeException e) {
+						wres.discard();
+						handler.fail(ctx, e);
+					}
+				} else {
+					wres.discard();
+					done = false;
+				}
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				ctx.close();
+			} finally {
+				wres.recycle();
+				wreq.recycle();
+				handler.resume(ctx, done);
+			}
+		}, ctx.executor());
+		
+		return true;
+	}
+	
+	/**
+	 * Starts handling the request.
+	 * 
+	 * @param req Request
+	 * @param res Response
+	 * @return a {@link CompletableFuture} of whether or not the request was fulfilled
+	 * @throws IOException may throw an exception on write failure
+	 */
+	protected abstract CompletableFuture<Boolean> handle(WrappedRequest<S> req, WrappedResponse<S> res) throws IOException;
+	
+}
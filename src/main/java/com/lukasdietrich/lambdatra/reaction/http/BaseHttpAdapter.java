@@ -1,22 +1,21 @@
 package com.lukasdietrich.lambdatra.reaction.http;
 
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
-import io.netty.handler.codec.http.FullHttpResponse;
-import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http.HttpVersion;
 
 import java.io.IOException;
-import java.util.Map;
 
 import com.lukasdietrich.lambdatra.NettyHandler;
 import com.lukasdietrich.lambdatra.reaction.Adapter;
 import com.lukasdietrich.lambdatra.reaction.CallbackAdapter;
+import com.lukasdietrich.lambdatra.routing.PathParams;
 import com.lukasdietrich.lambdatra.session.SessionStore;
 
 /**
  * Arbitrary {@link Adapter} for http request/response communication.
+ * <br>
+ * Request and response wrappers are recycled once the callback
+ * returned, so they must not be used afterwards.
  * 
  * @author Lukas Dietrich
  *
@@ -32,21 +31,46 @@ public abstract class BaseHttpAdapter<S, E> extends CallbackAdapter<E> {
 	}
 
 	@Override
-	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, Map<String, String> params) throws IOException {
-		FullHttpResponse res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
-		WrappedRequest<S> wreq = new WrappedRequest<>(req, params, sessions);
-		WrappedResponse<S> wres = new WrappedResponse<>(wreq, res, sessions);
+	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) throws IOException {
+		WrappedRequest<S> wreq = WrappedRequest.newInstance(req, params, sessions, ctx.executor());
+		WrappedResponse<S> wres = WrappedResponse.newInstance(handler, ctx, wreq, sessions);
 		
-		if (handle(wreq, wres)) {
-			wres.applyHeader();
-			ctx.channel().writeAndFlush(res);
-			ctx.close();
-			wres.close();
+		try {
+			boolean fulfilled;
 			
-			return true;
+			try {
+				fulfilled = handle(wreq, wres);
+			} catch (IOException | RuntimeException e) {
+				wres.discard();
+				
+				if (wres.isCommitted())
+					ctx.close();
+				
+				throw e;
+			}
+			
+			if (fulfilled || wres.isCommitted()) {
+				fulfilled(wreq, wres);
+				wres.send();
+				return true;
+			}
+			
+			wres.discard();
+			return false;
+		} finally {
+			wres.recycle();
+			wreq.recycle();
 		}
-		
-		return false;
+	}
+	
+	/**
+	 * Called after the callback fulfilled a request and 
+	 * before the response is sent.
+	 * 
+	 * @param req Request
+	 * @param res Response
+	 */
+	protected void fulfilled(WrappedRequest<S> req, WrappedResponse<S> res) {
 	}
 	
 	protected abstract boolean handle(WrappedRequest<S> req, WrappedResponse<S> res) throws IOException;
@@ -0,0 +1,41 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * Receives the body of a streamed request.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public interface BodyHandler<S> {
+
+	/**
+	 * Called for every chunk of the body. The chunk is released
+	 * after the call, so it has to be retained to be kept.
+	 * 
+	 * @param chunk part of the body
+	 * @throws IOException may throw an exception on processing failure
+	 */
+	public void onContent(ByteBuf chunk) throws IOException;
+	
+	/**
+	 * Called after the last chunk to respond to the request.
+	 * 
+	 * @param res Response
+	 * @throws IOException may throw an exception on write failure
+	 */
+	public void onComplete(WrappedResponse<S> res) throws IOException;
+	
+	/**
+	 * Called if the request can not be completed, eg. because
+	 * the connection was closed or processing failed.
+	 * 
+	 * @param cause reason of the failure
+	 */
+	public default void onError(Throwable cause) {
+	}
+	
+}
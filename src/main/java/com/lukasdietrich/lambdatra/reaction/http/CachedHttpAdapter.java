@@ -0,0 +1,155 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.cookie.Cookie;
+import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.lukasdietrich.lambdatra.ConstantResponse;
+import com.lukasdietrich.lambdatra.NettyHandler;
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.routing.PathParams;
+import com.lukasdietrich.lambdatra.session.SessionStore;
+
+/**
+ * {@link Adapter} for {@link HttpCallback}s, whose responses
+ * are served from a {@link ResponseCache}.
+ * <br>
+ * Stale responses are sent right away. The callback then runs once
+ * more on an {@link Executor} with a detached response, which replaces
+ * the cached one, so the event loop does not wait for it.
+ * <br>
+ * Requests carrying the session cookie bypass the cache, unless the
+ * cache varies on <code>Cookie</code>, as their responses may depend
+ * on the session.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class CachedHttpAdapter<S> extends HttpAdapter<S> {
+	
+	private ResponseCache cache;
+	private SessionStore<S> sessions;
+	private Executor executor;
+
+	public CachedHttpAdapter(HttpCallback<S> callback, SessionStore<S> sessions, ResponseCache cache) {
+		this(callback, sessions, cache, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param callback callback of the route
+	 * @param sessions {@link SessionStore} to use
+	 * @param cache cache of responses
+	 * @param executor executor to revalidate stale responses on
+	 */
+	public CachedHttpAdapter(HttpCallback<S> callback, SessionStore<S> sessions, ResponseCache cache, Executor executor) {
+		super(callback, sessions);
+		
+		this.cache = cache;
+		this.sessions = sessions;
+		this.executor = executor;
+	}
+	
+	@Override
+	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) throws IOException {
+		String path = NettyHandler.path(req.getUri());
+		String key = key(req, path);
+		ResponseCache.Entry entry = key == null ? null : cache.get(key);
+		
+		if (entry == null)
+			return super.call(handler, ctx, req, params);
+		
+		try {
+			handler.send(ctx, req, entry.response);
+		} finally {
+			entry.response.release();
+		}
+		
+		if (entry.revalidate())
+			revalidate(handler, ctx, req, params, key, path);
+		
+		return true;
+	}
+	
+	@Override
+	protected void fulfilled(WrappedRequest<S> req, WrappedResponse<S> res) {
+		String path = NettyHandler.path(req.getRequest().getUri());
+		String key = key(req.getRequest(), path);
+		
+		if (key != null) {
+			ConstantResponse snapshot = res.snapshot(cache::isCacheable);
+			
+			if (snapshot != null)
+				cache.put(key, path, snapshot);
+		}
+	}
+	
+	/**
+	 * Builds the key of a request, unless it carries the session
+	 * cookie and the cache does not vary on cookies.
+	 */
+	private String key(HttpRequest req, String path) {
+		String header = req.headers().get(Names.COOKIE);
+		
+		if (header != null && sessions != null && !cache.isVaried(Names.COOKIE)) {
+			for (Cookie cookie : ServerCookieDecoder.LAX.decode(header)) {
+				if (cookie.name().equals(sessions.getCookieKey()))
+					return null;
+			}
+		}
+		
+		return cache.key(req, path);
+	}
+	
+	private void revalidate(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params, 
+			String key, String path) {
+		WrappedRequest<S> wreq = new WrappedRequest<>(req, params, sessions, ctx.executor());
+		WrappedResponse<S> wres = new WrappedResponse<>(handler, ctx, wreq, sessions);
+		
+		wres.detach();
+		req.retain();
+		
+		try {
+			Offload.http(getCallback(), executor).call(wreq, wres).whenComplete((fulfilled, e) -> {
+				try {
+					revalidated(wres, e, key, path);
+				} finally {
+					wres.discard();
+					req.release();
+				}
+			});
+		} catch (IOException | RuntimeException e) {
+			revalidated(wres, e, key, path);
+			wres.discard();
+			req.release();
+		}
+	}
+	
+	private void revalidated(WrappedResponse<S> res, Throwable error, String key, String path) {
+		if (error != null) {
+			error.printStackTrace();
+			cache.remove(key);
+			return;
+		}
+		
+		try {
+			ConstantResponse snapshot = res.snapshot(cache::isCacheable);
+			
+			if (snapshot != null) {
+				cache.put(key, path, snapshot);
+			} else {
+				cache.remove(key);
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			cache.remove(key);
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.lukasdietrich.lambdatra.ConstantResponse;
+import com.lukasdietrich.lambdatra.NettyHandler;
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.routing.PathParams;
+import com.lukasdietrich.lambdatra.session.SessionStore;
+
+/**
+ * {@link Adapter} for {@link AsyncHttpCallback}s, that runs the callback
+ * only once for concurrent requests with the same key.
+ * <br>
+ * The first request leads and is answered as usual. Requests arriving
+ * meanwhile are suspended and answered with a copy of its response. If
+ * the response can not be shared, because it sets a cookie, is streamed
+ * or has a file as body, they run the callback themselves.
+ * 
+ * @author Lukas Dietrich
+ * 
+ */
+public class CoalescingHttpAdapter<S> extends AsyncHttpAdapter<S> {
+	
+	private Function<? super HttpRequest, String> key;
+	private ConcurrentMap<String, Flight> flights;
+	
+	public CoalescingHttpAdapter(AsyncHttpCallback<S> callback, SessionStore<S> sessions,
+			Function<? super HttpRequest, String> key) {
+		super(callback, sessions);
+		
+		this.key = key;
+		this.flights = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Default key, that coalesces GET requests of the same uri.
+	 *
+	 * @param req the request
+	 * @return the uri or null for any other method
+	 */
+	public static String uri(HttpRequest req) {
+		return HttpMethod.GET.equals(req.getMethod()) ? req.getUri() : null;
+	}
+	
+	@Override
+	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) throws IOException {
+		String k = key.apply(req);
+		
+		if (k == null)
+			return super.call(handler, ctx, req, params);
+		
+		for (;;) {
+			Flight flight = new Flight(k, req);
+			Flight leading = flights.putIfAbsent(k, flight);
+			
+			if (leading == null) {
+				try {
+					return super.call(handler, ctx, req, params);
+				} catch (IOException | RuntimeException e) {
+					land(flight, null, e);
+					throw e;
+				}
+			}
+			
+			if (leading.follow()) {
+				follow(handler, ctx, req, params, leading);
+				return true;
+			}
+		}
+	}
+	
+	@Override
+	protected CompletableFuture<Boolean> handle(WrappedRequest<S> req, WrappedResponse<S> res) throws IOException {
+		CompletableFuture<Boolean> result = super.handle(req, res);
+		String k = key.apply(req.getRequest());
+		Flight flight = k == null ? null : flights.get(k);
+		
+		if (flight == null || flight.leader != req.getRequest())
+			return result;
+		
+		return result.whenComplete((fulfilled, error) -> land(flight, res, error));
+	}
+	
+	private void follow(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params,
+			Flight leading) {
+		handler.suspend(ctx);
+		
+		leading.whenCompleteAsync((shared, error) -> {
+			if (error == null && shared == null) {
+				try {
+					super.call(handler, ctx, req, params);
+				} catch (IOException | RuntimeException e) {
+					handler.fail(ctx, e);
+					handler.resume(ctx, true);
+				}
+				
+				return;
+			}
+			
+			if (error != null) {
+				handler.fail(ctx, error);
+			} else {
+				try {
+					handler.send(ctx, req, shared);
+				} finally {
+					shared.release();
+				}
+			}
+			
+			handler.resume(ctx, true);
+		}, ctx.executor());
+	}
+	
+	private void land(Flight flight, WrappedResponse<S> res, Throwable error) {
+		flights.remove(flight.key, flight);
+		int followers = flight.land();
+		
+		if (error != null) {
+			flight.completeExceptionally(error);
+			return;
+		}
+		
+		ConstantResponse shared = null;
+		
+		try {
+			if (followers > 0 && res != null)
+				shared = res.snapshot(this::isShareable);
+		} catch (RuntimeException e) {
+			flight.completeExceptionally(e);
+			return;
+		}
+		
+		if (shared != null) {
+			for (int i = 1; i < followers; i++)
+				shared.retain();
+		}
+		
+		flight.complete(shared);
+	}
+	
+	private boolean isShareable(HttpResponse res) {
+		return !res.headers().contains(Names.SET_COOKIE);
+	}
+	
+	/**
+	 * A running callback, that concurrent requests may follow
+	 * until it lands.
+	 */
+	private static final class Flight extends CompletableFuture<ConstantResponse> {
+		
+		private final String key;
+		private final HttpRequest leader;
+		private final AtomicInteger followers;
+		
+		private Flight(String key, HttpRequest leader) {
+			this.key = key;
+			this.leader = leader;
+			this.followers = new AtomicInteger();
+		}
+		
+		private boolean follow() {
+			for (;;) {
+				int n = followers.get();
+				
+				if (n < 0)
+					return false;
+				
+				if (followers.compareAndSet(n, n + 1))
+					return true;
+			}
+		}
+		
+		private int land() {
+			return followers.getAndSet(-1);
+		}
+		
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+
+import com.lukasdietrich.lambdatra.ConstantResponse;
+import com.lukasdietrich.lambdatra.NettyHandler;
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.routing.PathParams;
+
+/**
+ * {@link Adapter} answering every request with the same {@link ConstantResponse}
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class ConstantAdapter extends Adapter {
+	
+	private ConstantResponse response;
+	
+	public ConstantAdapter(ConstantResponse response) {
+		this.response = response;
+	}
+
+	@Override
+	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) {
+		handler.send(ctx, req, response);
+		return true;
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+/**
+ * Controls reading of a streamed request body.
+ * <br>
+ * While paused, no further chunks are read from the
+ * connection and the client is slowed down by TCP.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public interface FlowControl {
+
+	/**
+	 * Stops reading from the connection.
+	 */
+	public void pause();
+	
+	/**
+	 * Continues reading from the connection.
+	 * May be called from any thread.
+	 */
+	public void resume();
+	
+}
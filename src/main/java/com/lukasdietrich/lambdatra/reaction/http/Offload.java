@@ -0,0 +1,71 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Turns blocking callbacks into asynchronous ones, that run on
+ * an {@link Executor} instead of the netty event loop.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public final class Offload {
+	
+	private Offload() {
+	}
+	
+	/**
+	 * Wraps a {@link HttpCallback} to run on an {@link Executor}.
+	 * 
+	 * @param cb blocking callback
+	 * @param executor executor to run the callback on
+	 * @param <S> class of session value
+	 * @return an {@link AsyncHttpCallback}
+	 */
+	public static <S> AsyncHttpCallback<S> http(HttpCallback<S> cb, Executor executor) {
+		return (req, res) -> submit(() -> {
+			cb.call(req, res);
+			return true;
+		}, executor);
+	}
+	
+	/**
+	 * Wraps a {@link MiddlewareCallback} to run on an {@link Executor}.
+	 * 
+	 * @param cb blocking callback
+	 * @param executor executor to run the callback on
+	 * @param <S> class of session value
+	 * @return an {@link AsyncMiddlewareCallback}
+	 */
+	public static <S> AsyncMiddlewareCallback<S> middleware(MiddlewareCallback<S> cb, Executor executor) {
+		return (req, res) -> submit(() -> cb.call(req, res), executor);
+	}
+	
+	private static CompletableFuture<Boolean> submit(Task task, Executor executor) {
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return task.run();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, executor);
+		} catch (RejectedExecutionException e) {
+			CompletableFuture<Boolean> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(e);
+			return rejected;
+		}
+	}
+	
+	@FunctionalInterface
+	private interface Task {
+		
+		boolean run() throws IOException;
+		
+	}
+	
+}
@@ -0,0 +1,371 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.lukasdietrich.lambdatra.ConstantResponse;
+
+/**
+ * Cache of complete responses of GET routes, bounded by the total
+ * size of the cached bodies.
+ * <br>
+ * Lookups do not lock. Once the cache is full, the least recently
+ * used of a few sampled responses is evicted, which approximates
+ * least recently used eviction.
+ * <br>
+ * Responses are keyed by path, query and the values of the configured
+ * request headers. Only responses with status 200, without cookies and
+ * without <code>Cache-Control: no-store</code> or <code>private</code>
+ * are cached, and only if all headers they vary on are part of the key.
+ * Requests with a session bypass the cache, unless it varies on
+ * <code>Cookie</code>.
+ * <br>
+ * Entries are fresh for their time to live. Afterwards they may still
+ * be served for the stale-while-revalidate period, while the callback
+ * runs once more to replace them.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class ResponseCache {
+	
+	/**
+	 * Default time in milliseconds responses are fresh
+	 */
+	public static final long DEFAULT_TTL = 60_000;
+	
+	private static final long ENTRY_OVERHEAD = 512;
+	private static final int SAMPLES = 8;
+	
+	private final long capacity;
+	private final ConcurrentHashMap<String, Entry> entries;
+	private final AtomicLong size;
+	private Iterator<Entry> hand;
+	
+	private long ttl = DEFAULT_TTL;
+	private long stale;
+	private String[] query;
+	private String[] vary = new String[0];
+	
+	/**
+	 * @param capacity maximum amount of bytes to hold
+	 */
+	public ResponseCache(long capacity) {
+		this.capacity = capacity;
+		this.entries = new ConcurrentHashMap<>();
+		this.size = new AtomicLong();
+	}
+	
+	/**
+	 * @param ttl time in milliseconds responses are fresh
+	 * @return this
+	 */
+	public ResponseCache setTtl(long ttl) {
+		this.ttl = ttl;
+		return this;
+	}
+	
+	/**
+	 * @param stale time in milliseconds expired responses are still
+	 * 			served while being revalidated
+	 * @return this
+	 */
+	public ResponseCache setStaleWhileRevalidate(long stale) {
+		this.stale = stale;
+		return this;
+	}
+	
+	/**
+	 * Limits the query parameters to tell responses apart.
+	 * By default the whole query string is part of the key.
+	 * 
+	 * @param names names of relevant query parameters
+	 * @return this
+	 */
+	public ResponseCache setQuery(String... names) {
+		this.query = names;
+		return this;
+	}
+	
+	/**
+	 * Sets request headers to tell responses apart, e.g. <code>Accept-Language</code>.
+	 * 
+	 * @param headers names of relevant request headers
+	 * @return this
+	 */
+	public ResponseCache setVary(String... headers) {
+		this.vary = headers;
+		return this;
+	}
+	
+	/**
+	 * Removes all responses of a path.
+	 * 
+	 * @param path request path
+	 */
+	public void invalidate(String path) {
+		for (Entry entry : entries.values()) {
+			if (entry.path.equals(path))
+				remove(entry);
+		}
+	}
+	
+	/**
+	 * Removes all responses.
+	 */
+	public void invalidateAll() {
+		entries.values().forEach(this::remove);
+	}
+	
+	/**
+	 * @return amount of bytes held
+	 */
+	public long getSize() {
+		return size.get();
+	}
+	
+	/**
+	 * Builds the key of a request.
+	 * 
+	 * @param req the request
+	 * @param path request path
+	 * @return key or null, if the request is not cacheable
+	 */
+	String key(HttpRequest req, String path) {
+		if (!HttpMethod.GET.equals(req.getMethod()))
+			return null;
+		
+		StringBuilder key = new StringBuilder(path);
+		String uri = req.getUri();
+		int start = uri.indexOf('?');
+		
+		if (query == null) {
+			if (start >= 0)
+				key.append(uri, start, uri.length());
+		} else if (query.length > 0 && start >= 0) {
+			QueryStringDecoder decoder = new QueryStringDecoder(uri);
+			
+			for (String name : query) {
+				List<String> values = decoder.parameters().get(name);
+				
+				if (values != null)
+					key.append('&').append(name).append('=').append(values);
+			}
+		}
+		
+		for (String header : vary)
+			key.append('\n').append(req.headers().getAll(header));
+		
+		return key.toString();
+	}
+	
+	/**
+	 * Decides on status and headers whether a response is cacheable.
+	 * 
+	 * @param res the response
+	 * @return true if the response may be cached
+	 */
+	boolean isCacheable(HttpResponse res) {
+		if (res.getStatus().code() != HttpResponseStatus.OK.code() || res.headers().contains(Names.SET_COOKIE))
+			return false;
+		
+		String control = res.headers().get(Names.CACHE_CONTROL);
+		
+		if (control != null) {
+			control = control.toLowerCase(Locale.ENGLISH);
+			
+			if (control.contains("no-store") || control.contains("private"))
+				return false;
+		}
+		
+		for (String header : res.headers().getAll(Names.VARY)) {
+			for (String name : header.split(",")) {
+				if (!isVaried(name.trim()))
+					return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @param name name of a request header
+	 * @return true if the header is part of the key
+	 */
+	boolean isVaried(String name) {
+		for (String header : vary) {
+			if (header.equalsIgnoreCase(name))
+				return true;
+		}
+		
+		return name.isEmpty();
+	}
+	
+	/**
+	 * Looks up a key. The response of the returned entry is retained
+	 * and has to be released by the caller. Entries past their
+	 * stale-while-revalidate period are removed.
+	 * 
+	 * @param key key of the request
+	 * @return cached entry or null
+	 */
+	Entry get(String key) {
+		Entry entry = entries.get(key);
+		
+		if (entry == null)
+			return null;
+		
+		long now = System.currentTimeMillis();
+		
+		if (now >= entry.expires + stale) {
+			remove(entry);
+			return null;
+		}
+		
+		try {
+			entry.response.retain();
+		} catch (IllegalReferenceCountException e) {
+			// evicted meanwhile
+			return null;
+		}
+		
+		if (entry.accessed != now)
+			entry.accessed = now;
+		
+		return entry;
+	}
+	
+	/**
+	 * Adds or replaces a response. Responses that do not fit are released.
+	 * 
+	 * @param key key of the request
+	 * @param path request path
+	 * @param response response to cache
+	 */
+	void put(String key, String path, ConstantResponse response) {
+		Entry entry = new Entry(key, path, response, System.currentTimeMillis() + ttl);
+		
+		if (weight(entry) > capacity) {
+			response.release();
+			return;
+		}
+		
+		size.addAndGet(weight(entry));
+		Entry previous = entries.put(key, entry);
+		
+		if (previous != null)
+			evicted(previous);
+		
+		if (size.get() > capacity)
+			evict(entry);
+	}
+	
+	/**
+	 * Removes the response of a key.
+	 * 
+	 * @param key key of the request
+	 */
+	void remove(String key) {
+		Entry entry = entries.remove(key);
+		
+		if (entry != null)
+			evicted(entry);
+	}
+	
+	private void remove(Entry entry) {
+		if (entries.remove(entry.key, entry))
+			evicted(entry);
+	}
+	
+	/**
+	 * Evicts responses until the cache is within its capacity.
+	 * Only adding responses to a full cache synchronizes here.
+	 * 
+	 * @param added response that has just been added and is spared
+	 */
+	private synchronized void evict(Entry added) {
+		while (size.get() > capacity) {
+			Entry victim = null;
+			
+			for (int i = 0; i < SAMPLES; i++) {
+				if (hand == null || !hand.hasNext()) {
+					hand = entries.values().iterator();
+					
+					if (!hand.hasNext())
+						return;
+				}
+				
+				Entry candidate = hand.next();
+				
+				if (candidate == added && entries.size() > 1)
+					continue;
+				
+				if (victim == null || candidate.accessed < victim.accessed)
+					victim = candidate;
+			}
+			
+			if (victim != null)
+				remove(victim);
+		}
+	}
+	
+	private void evicted(Entry entry) {
+		size.addAndGet(-weight(entry));
+		entry.response.release();
+	}
+	
+	private static long weight(Entry entry) {
+		return ENTRY_OVERHEAD + entry.response.length();
+	}
+	
+	/**
+	 * A cached response
+	 * 
+	 * @author Lukas Dietrich
+	 *
+	 */
+	static final class Entry {
+		
+		final String key;
+		final String path;
+		final ConstantResponse response;
+		final long expires;
+		private volatile long accessed;
+		private boolean revalidating;
+		
+		private Entry(String key, String path, ConstantResponse response, long expires) {
+			this.key = key;
+			this.path = path;
+			this.response = response;
+			this.expires = expires;
+			this.accessed = System.currentTimeMillis();
+		}
+		
+		/**
+		 * Claims the revalidation of an expired entry, so only
+		 * one request runs the callback again.
+		 * 
+		 * @return true if the caller has to revalidate the entry
+		 */
+		synchronized boolean revalidate() {
+			if (revalidating || System.currentTimeMillis() < expires)
+				return false;
+			
+			revalidating = true;
+			return true;
+		}
+		
+	}
+
+}
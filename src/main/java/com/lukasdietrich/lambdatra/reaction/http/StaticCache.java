@@ -0,0 +1,280 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of resolved static files, bounded by the total size of
+ * the cached contents.
+ * <br>
+ * Small files are held in memory, larger ones only by their
+ * resolved path and metadata. Lookups do not lock. Once the cache
+ * is full, the least recently used of a few sampled files is evicted.
+ * <br>
+ * Entries are invalidated by a {@link WatchService} on the root
+ * directory, so hits do not touch the filesystem. If the directory
+ * can not be watched, the modification time of a file is checked
+ * at most once a second instead.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+class StaticCache {
+	
+	private static final long MAX_ENTRY_SIZE = 1 << 20;
+	private static final long ENTRY_OVERHEAD = 128;
+	private static final long CHECK_INTERVAL = 1000;
+	private static final int SAMPLES = 8;
+	
+	private final long capacity;
+	private final ConcurrentHashMap<String, Entry> entries;
+	private Iterator<Entry> hand;
+	private long size;
+	private long generation;
+	private volatile boolean watching;
+	
+	/**
+	 * Creates a cache and starts watching the root directory.
+	 * 
+	 * @param root directory of the served files
+	 * @param capacity maximum amount of bytes to hold
+	 */
+	StaticCache(Path root, long capacity) {
+		this.capacity = capacity;
+		this.entries = new ConcurrentHashMap<>();
+		
+		try {
+			watch(root.toAbsolutePath().normalize());
+			watching = true;
+		} catch (IOException | UnsupportedOperationException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Looks up a request path. The returned entry is retained
+	 * and has to be released by the caller.
+	 * 
+	 * @param key request path
+	 * @return cached entry or null
+	 */
+	StaticFile get(String key) {
+		Entry entry = entries.get(key);
+		
+		if (entry == null)
+			return null;
+		
+		long now = System.currentTimeMillis();
+		
+		if (!watching && now - entry.checked >= CHECK_INTERVAL) {
+			if (entry.file.file.lastModified() != entry.file.modified) {
+				remove(entry);
+				return null;
+			}
+			
+			entry.checked = now;
+		}
+		
+		// evicted meanwhile
+		if (!entry.file.tryRetain())
+			return null;
+		
+		if (entry.accessed != now)
+			entry.accessed = now;
+		
+		return entry.file;
+	}
+	
+	/**
+	 * Resolves a file and adds it to the cache. The returned
+	 * entry is retained and has to be released by the caller.
+	 * <br>
+	 * If the directory changed while the file was read, the
+	 * entry is returned without being cached.
+	 * 
+	 * @param key request path
+	 * @param file file to serve for this path
+	 * @param index whether the file is the index of a requested directory
+	 * @return the new entry
+	 * @throws IOException if the file can not be read
+	 */
+	StaticFile load(String key, File file, boolean index) throws IOException {
+		long observed;
+		
+		synchronized (this) {
+			observed = generation;
+		}
+		
+		StaticFile resolved = StaticFile.resolve(file, index, Math.min(MAX_ENTRY_SIZE, capacity - ENTRY_OVERHEAD));
+		
+		synchronized (this) {
+			if (observed != generation) 
+				return resolved;
+			
+			Entry entry = new Entry(key, resolved);
+			Entry previous = entries.put(key, entry);
+			
+			if (previous != null)
+				evicted(previous);
+			
+			size += weight(entry);
+			resolved.retain();
+			
+			evict(entry);
+		}
+		
+		return resolved;
+	}
+	
+	/**
+	 * Evicts files until the cache is within its capacity.
+	 * 
+	 * @param added file that has just been added and is spared
+	 */
+	private void evict(Entry added) {
+		while (size > capacity) {
+			Entry victim = null;
+			
+			for (int i = 0; i < SAMPLES; i++) {
+				if (hand == null || !hand.hasNext()) {
+					hand = entries.values().iterator();
+					
+					if (!hand.hasNext())
+						return;
+				}
+				
+				Entry candidate = hand.next();
+				
+				if (candidate == added && entries.size() > 1)
+					continue;
+				
+				if (victim == null || candidate.accessed < victim.accessed)
+					victim = candidate;
+			}
+			
+			if (victim != null && entries.remove(victim.key, victim))
+				evicted(victim);
+		}
+	}
+	
+	private synchronized void remove(Entry entry) {
+		if (entries.remove(entry.key, entry))
+			evicted(entry);
+	}
+	
+	private void evicted(Entry entry) {
+		size -= weight(entry);
+		
+		entry.file.release();
+	}
+	
+	private static long weight(Entry entry) {
+		return ENTRY_OVERHEAD + entry.file.weight();
+	}
+	
+	private synchronized void invalidate(Path dir, Path changed) {
+		generation++;
+		
+		for (Entry entry : entries.values()) {
+			StaticFile file = entry.file;
+			
+			if (file.dependsOn(changed) || (file.index && file.path.getParent().equals(dir)))
+				remove(entry);
+		}
+	}
+	
+	private synchronized void clear() {
+		generation++;
+		
+		entries.values().forEach(this::remove);
+	}
+	
+	private void watch(Path root) throws IOException {
+		WatchService watcher = FileSystems.getDefault().newWatchService();
+		register(watcher, root);
+		
+		Thread thread = new Thread(() -> {
+			try {
+				for (;;) {
+					WatchKey key = watcher.take();
+					Path dir = (Path) key.watchable();
+					
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							clear();
+							continue;
+						}
+						
+						Path changed = dir.resolve((Path) event.context());
+						
+						if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed))
+							register(watcher, changed);
+						
+						invalidate(dir, changed);
+					}
+					
+					key.reset();
+				}
+			} catch (InterruptedException e) {
+				// stop watching
+			} catch (IOException e) {
+				e.printStackTrace();
+				watching = false;
+			}
+		}, "lambdatra-static-watcher");
+		
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private static void register(WatchService watcher, Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				dir.register(watcher, 
+						StandardWatchEventKinds.ENTRY_CREATE, 
+						StandardWatchEventKinds.ENTRY_DELETE, 
+						StandardWatchEventKinds.ENTRY_MODIFY);
+				
+				return FileVisitResult.CONTINUE;
+			}
+			
+		});
+	}
+	
+	/**
+	 * A cached file
+	 * 
+	 * @author Lukas Dietrich
+	 *
+	 */
+	private static final class Entry {
+		
+		private final String key;
+		private final StaticFile file;
+		private volatile long accessed;
+		private volatile long checked;
+		
+		private Entry(String key, StaticFile file) {
+			this.key = key;
+			this.file = file;
+			this.accessed = System.currentTimeMillis();
+			this.checked = accessed;
+		}
+		
+	}
+
+}
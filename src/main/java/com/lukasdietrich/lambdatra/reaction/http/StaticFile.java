@@ -0,0 +1,437 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A resolved static file with its validators and,
+ * if it is cached, its content.
+ * <br>
+ * Precompressed sidecars (<code>file.br</code>, <code>file.gz</code>)
+ * which are at least as recent as the file are resolved as
+ * encoded variants of it.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+final class StaticFile {
+	
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+			.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+			.withZone(ZoneOffset.UTC);
+	
+	private static final int MAX_RANGES = 16;
+	
+	final File file;
+	final Path path;
+	final boolean index;
+	final String mime;
+	final String encoding;
+	final long modified;
+	final long length;
+	final String etag;
+	final String lastModified;
+	final ByteBuf content;
+	
+	private final StaticFile brotli;
+	private final StaticFile gzip;
+	
+	private StaticFile(File file, boolean index, String mime, String encoding, long maxContent, 
+			StaticFile brotli, StaticFile gzip) throws IOException {
+		this.file = file;
+		this.path = file.toPath().toAbsolutePath().normalize();
+		this.index = index;
+		this.mime = mime;
+		this.encoding = encoding;
+		this.modified = file.lastModified();
+		this.length = file.length();
+		this.etag = '"' + Long.toHexString(length) + '-' + Long.toHexString(modified) + '"';
+		this.lastModified = HTTP_DATE.format(Instant.ofEpochMilli(modified));
+		this.content = length <= maxContent ? read(file, (int) length) : null;
+		this.brotli = brotli;
+		this.gzip = gzip;
+	}
+	
+	/**
+	 * Resolves a file and its precompressed variants.
+	 * 
+	 * @param file file to serve
+	 * @param index whether the file is the index of a requested directory
+	 * @param maxContent size up to which files are read into memory
+	 * @return the resolved file
+	 * @throws IOException if the file can not be read
+	 */
+	static StaticFile resolve(File file, boolean index, long maxContent) throws IOException {
+		String mime = Files.probeContentType(file.toPath());
+		long modified = file.lastModified();
+		
+		StaticFile brotli = null, gzip = null;
+		
+		try {
+			brotli = sidecar(file, ".br", "br", modified, index, mime, maxContent);
+			gzip = sidecar(file, ".gz", "gzip", modified, index, mime, maxContent);
+			
+			return new StaticFile(file, index, mime, null, maxContent, brotli, gzip);
+		} catch (IOException e) {
+			release(brotli);
+			release(gzip);
+			throw e;
+		}
+	}
+	
+	private static StaticFile sidecar(File file, String suffix, String encoding, long modified, 
+			boolean index, String mime, long maxContent) throws IOException {
+		File sidecar = new File(file.getPath() + suffix);
+		
+		if (!sidecar.isFile() || sidecar.lastModified() < modified)
+			return null;
+		
+		return new StaticFile(sidecar, index, mime, encoding, maxContent, null, null);
+	}
+	
+	private static ByteBuf read(File file, int length) throws IOException {
+		ByteBuf content = Unpooled.directBuffer(length);
+		
+		try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			while (content.isWritable() && content.writeBytes(in, content.writableBytes()) > 0);
+		} catch (IOException e) {
+			content.release();
+			throw e;
+		}
+		
+		return content;
+	}
+	
+	/**
+	 * Picks the representation to send for the
+	 * <code>Accept-Encoding</code> of a request.
+	 * 
+	 * @param req the request
+	 * @return a precompressed variant or this file
+	 */
+	StaticFile select(WrappedRequest<?> req) {
+		if (!hasVariants())
+			return this;
+		
+		String accept = req.getHeader(Names.ACCEPT_ENCODING).orElse(null);
+		
+		if (accept == null)
+			return this;
+		
+		if (brotli != null && accepts(accept, "br"))
+			return brotli;
+		
+		if (gzip != null && accepts(accept, "gzip"))
+			return gzip;
+		
+		return this;
+	}
+	
+	/**
+	 * Tells whether or not an <code>Accept-Encoding</code> header
+	 * allows a content coding with a non-zero quality.
+	 * 
+	 * @param header value of the header
+	 * @param coding name of the content coding
+	 * @return true if the coding is acceptable
+	 */
+	static boolean accepts(String header, String coding) {
+		boolean wildcard = false;
+		
+		for (String token : header.split(",")) {
+			int semicolon = token.indexOf(';');
+			String name = (semicolon < 0 ? token : token.substring(0, semicolon)).trim();
+			boolean exact = name.equalsIgnoreCase(coding);
+			
+			if (!exact && !name.equals("*"))
+				continue;
+			
+			boolean acceptable = true;
+			int q = token.indexOf("q=", semicolon);
+			
+			if (semicolon >= 0 && q >= 0) {
+				try {
+					acceptable = Float.parseFloat(token.substring(q + 2).trim()) > 0;
+				} catch (NumberFormatException e) {
+					acceptable = false;
+				}
+			}
+			
+			if (exact)
+				return acceptable;
+			
+			wildcard = acceptable;
+		}
+		
+		return wildcard;
+	}
+	
+	/**
+	 * @return true if precompressed variants exist
+	 */
+	boolean hasVariants() {
+		return brotli != null || gzip != null;
+	}
+	
+	/**
+	 * Tells whether or not a change of a path affects this file.
+	 * 
+	 * @param changed changed path in the served directory
+	 * @return true if the file, one of its ancestors or a sidecar changed
+	 */
+	boolean dependsOn(Path changed) {
+		String name = path.getFileName().toString();
+		
+		return path.startsWith(changed)
+				|| changed.equals(path.resolveSibling(name + ".br"))
+				|| changed.equals(path.resolveSibling(name + ".gz"));
+	}
+	
+	/**
+	 * @return amount of bytes held in memory
+	 */
+	long weight() {
+		return (content != null ? content.capacity() : 0) 
+				+ (brotli != null ? brotli.weight() : 0) 
+				+ (gzip != null ? gzip.weight() : 0);
+	}
+	
+	/**
+	 * Retains the contents of this file and its variants.
+	 */
+	void retain() {
+		if (content != null)
+			content.retain();
+		
+		if (brotli != null)
+			brotli.retain();
+		
+		if (gzip != null)
+			gzip.retain();
+	}
+	
+	/**
+	 * Retains the contents of this file and its variants, unless
+	 * they have been released by a concurrent eviction. Contents are
+	 * retained and released in the same order, so a failed attempt
+	 * only has to release what it retained itself.
+	 * 
+	 * @return false if the file has been released
+	 */
+	boolean tryRetain() {
+		if (!tryRetain(content))
+			return false;
+		
+		if (brotli != null && !brotli.tryRetain()) {
+			release(content);
+			return false;
+		}
+		
+		if (gzip != null && !gzip.tryRetain()) {
+			release(content);
+			release(brotli);
+			return false;
+		}
+		
+		return true;
+	}
+	
+	private static boolean tryRetain(ByteBuf content) {
+		try {
+			if (content != null)
+				content.retain();
+			
+			return true;
+		} catch (IllegalReferenceCountException e) {
+			return false;
+		}
+	}
+	
+	private static void release(ByteBuf content) {
+		if (content != null)
+			content.release();
+	}
+	
+	/**
+	 * Releases the contents of this file and its variants.
+	 */
+	void release() {
+		release(this);
+	}
+	
+	private static void release(StaticFile file) {
+		if (file == null)
+			return;
+		
+		if (file.content != null)
+			file.content.release();
+		
+		release(file.brotli);
+		release(file.gzip);
+	}
+	
+	/**
+	 * Evaluates <code>If-None-Match</code> or, if absent, 
+	 * <code>If-Modified-Since</code> against this file.
+	 * 
+	 * @param req the conditional request
+	 * @return true if the client's copy is still valid
+	 */
+	boolean isNotModified(WrappedRequest<?> req) {
+		String match = req.getHeader(Names.IF_NONE_MATCH).orElse(null);
+		
+		if (match != null)
+			return matches(match);
+		
+		return req.getHeader(Names.IF_MODIFIED_SINCE)
+				.map(this::notModifiedSince)
+				.orElse(false);
+	}
+	
+	/**
+	 * Weak comparison of a list of entity tags, as used
+	 * by <code>If-None-Match</code>
+	 * 
+	 * @param header list of entity tags
+	 * @return true if any tag matches this file
+	 */
+	boolean matches(String header) {
+		for (String tag : header.split(",")) {
+			tag = tag.trim();
+			
+			if (tag.equals("*"))
+				return true;
+			
+			if (tag.startsWith("W/"))
+				tag = tag.substring(2);
+			
+			if (tag.equals(etag))
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Evaluates <code>Range</code> and <code>If-Range</code> of a
+	 * <code>GET</code> request against this file.
+	 * 
+	 * @param req the request
+	 * @return null to send the whole file, otherwise pairs of first
+	 * 			and last byte positions, which are empty if no range
+	 * 			can be satisfied
+	 */
+	long[] ranges(WrappedRequest<?> req) {
+		if (!HttpMethod.GET.equals(req.getRequest().getMethod()))
+			return null;
+		
+		String range = req.getHeader(Names.RANGE).orElse(null);
+		
+		if (range == null)
+			return null;
+		
+		String ifRange = req.getHeader(Names.IF_RANGE).orElse(null);
+		
+		if (ifRange != null && !ifRange.equals(etag) && !ifRange.equals(lastModified))
+			return null;
+		
+		return parseRange(range, length);
+	}
+	
+	/**
+	 * Parses a <code>Range</code> header in bytes.
+	 * 
+	 * @param header value of the header
+	 * @param length size of the file
+	 * @return null if the header is invalid or asks for too many ranges,
+	 * 			otherwise pairs of first and last byte positions of all
+	 * 			satisfiable ranges
+	 */
+	static long[] parseRange(String header, long length) {
+		if (!header.regionMatches(true, 0, "bytes=", 0, 6))
+			return null;
+		
+		String[] specs = header.substring(6).split(",");
+		
+		if (specs.length > MAX_RANGES)
+			return null;
+		
+		long[] ranges = new long[specs.length * 2];
+		int count = 0;
+		
+		try {
+			for (String spec : specs) {
+				spec = spec.trim();
+				
+				int dash = spec.indexOf('-');
+				
+				if (dash < 0)
+					return null;
+				
+				long first, last;
+				
+				if (dash == 0) {
+					long suffix = Long.parseLong(spec.substring(1));
+					
+					if (suffix < 0)
+						return null;
+					
+					first = Math.max(0, length - suffix);
+					last = length - 1;
+					
+					if (suffix == 0)
+						continue;
+				} else {
+					first = Long.parseLong(spec.substring(0, dash));
+					last = length - 1;
+					
+					if (dash < spec.length() - 1) {
+						long end = Long.parseLong(spec.substring(dash + 1));
+						
+						if (end < first)
+							return null;
+						
+						last = Math.min(end, last);
+					}
+					
+					if (first < 0)
+						return null;
+				}
+				
+				if (first < length) {
+					ranges[count++] = first;
+					ranges[count++] = last;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		
+		return Arrays.copyOf(ranges, count);
+	}
+	
+	private boolean notModifiedSince(String date) {
+		try {
+			return Instant.from(HTTP_DATE.parse(date)).getEpochSecond() >= modified / 1000;
+		} catch (DateTimeParseException e) {
+			return false;
+		}
+	}
+
+}
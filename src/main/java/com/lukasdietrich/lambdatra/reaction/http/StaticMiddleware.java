@@ -1,13 +1,34 @@
 package com.lukasdietrich.lambdatra.reaction.http;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpHeaders.Values;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * {@link MiddlewareCallback} implementation for a simple fileserver.
@@ -19,18 +40,40 @@ public class StaticMiddleware<S> implements MiddlewareCallback<S> {
 
 	private final String[] INDICE = { "index.html", "index.htm" };
 	
+	private static final Set<String> COMPRESSIBLE = new HashSet<>(Arrays.asList(
+			"html", "htm", "css", "js", "mjs", "json", "map", "svg", "xml", "txt", "csv", "md"));
+	
+	private static final long MIN_COMPRESS_SIZE = 256;
+	
 	private File source;
 	private long maxAge;
+	private StaticCache cache;
 	
 	/**
 	 * Creates a simple fileserver as a {@link HttpCallback}
 	 * 
 	 * @param source the root directory
 	 * @param maxAge 0 for no caching, or the number of seconds for a file to expire
+	 * @param cacheSize 0 to read files on every request, or the number of bytes
+	 * 			to keep recently served files in memory
 	 */
-	public StaticMiddleware(File source, long maxAge) {
+	public StaticMiddleware(File source, long maxAge, long cacheSize) {
 		this.source = source;
 		this.maxAge = maxAge;
+		
+		if (cacheSize > 0)
+			this.cache = new StaticCache(source.toPath(), cacheSize);
+	}
+	
+	/**
+	 * Shorthand for {@link #StaticMiddleware(File, long, long)}
+	 * <br>
+	 * with <code>cacheSize = 0</code>
+	 * @param source the root directory
+	 * @param maxAge 0 for no caching, or the number of seconds for a file to expire
+	 */
+	public StaticMiddleware(File source, long maxAge) {
+		this(source, maxAge, 0);
 	}
 	
 	/**
@@ -43,41 +86,200 @@ public class StaticMiddleware<S> implements MiddlewareCallback<S> {
 		this(source, 0);
 	}
 	
-	private void serveFile(File f, WrappedResponse<S> res) throws IOException {
-		if (maxAge > 0) {
-			res.enableCache(maxAge);
+	/**
+	 * Writes a gzip compressed <code>.gz</code> sidecar next to every
+	 * text, script, style and markup file in the served directory
+	 * which does not have an up to date one yet. The sidecars are
+	 * served instead of compressing the files on every request.
+	 * <br>
+	 * Brotli sidecars (<code>.br</code>) are served as well, but
+	 * have to be created by an external tool.
+	 * 
+	 * @param source the root directory
+	 */
+	public static void precompress(File source) {
+		try {
+			Files.walkFileTree(source.toPath(), new SimpleFileVisitor<Path>() {
+				
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					String name = file.getFileName().toString();
+					int dot = name.lastIndexOf('.');
+					
+					if (dot < 0 || !COMPRESSIBLE.contains(name.substring(dot + 1).toLowerCase()) || attrs.size() < MIN_COMPRESS_SIZE)
+						return FileVisitResult.CONTINUE;
+					
+					Path sidecar = file.resolveSibling(name + ".gz");
+					
+					if (Files.exists(sidecar) && Files.getLastModifiedTime(sidecar).compareTo(attrs.lastModifiedTime()) >= 0)
+						return FileVisitResult.CONTINUE;
+					
+					try {
+						gzip(file, sidecar);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+					
+					return FileVisitResult.CONTINUE;
+				}
+				
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+	}
+	
+	private static void gzip(Path file, Path sidecar) throws IOException {
+		Path temp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
 		
-		String mime = Files.probeContentType(f.toPath());
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp)) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		}) {
+			Files.copy(file, out);
+		}
+		
+		Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private void serveFile(String path, File f, boolean index, WrappedRequest<S> req, WrappedResponse<S> res) throws IOException {
+		serve(cache != null ? cache.load(path, f, index) : StaticFile.resolve(f, index, 0), req, res);
+	}
+	
+	private void serve(StaticFile file, WrappedRequest<S> req, WrappedResponse<S> res) throws IOException {
+		try {
+			StaticFile rep = file.select(req);
+			
+			if (rep.isNotModified(req)) {
+				res.setStatus(HttpResponseStatus.NOT_MODIFIED);
+			} else {
+				long[] ranges = rep.ranges(req);
+				
+				if (ranges != null && ranges.length > 2 && rep.encoding != null)
+					ranges = null;
+				
+				if (ranges == null) {
+					if (rep.content != null) {
+						res.setBody(rep.content.duplicate().retain());
+					} else {
+						res.sendFile(rep.file);
+					}
+					
+					if (file.mime != null)
+						res.setMime(file.mime);
+				} else {
+					servePartial(rep, ranges, res);
+				}
+				
+				if (rep.encoding != null)
+					res.setHeader(Names.CONTENT_ENCODING, rep.encoding);
+				
+				res.setHeader(Names.ACCEPT_RANGES, Values.BYTES);
+			}
+			
+			if (file.hasVariants())
+				res.setHeader(Names.VARY, Names.ACCEPT_ENCODING);
+			
+			if (maxAge > 0) {
+				res.enableCache(maxAge);
+			}
+			
+			res.setHeader(Names.ETAG, rep.etag);
+			res.setHeader(Names.LAST_MODIFIED, rep.lastModified);
+		} finally {
+			file.release();
+		}
+	}
+	
+	private void servePartial(StaticFile file, long[] ranges, WrappedResponse<S> res) throws IOException {
+		if (ranges.length == 0) {
+			res.setStatus(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+			res.setHeader(Names.CONTENT_RANGE, "bytes */" + file.length);
+			return;
+		}
 		
-		if (mime != null)
-			res.setMime(mime);
+		res.setStatus(HttpResponseStatus.PARTIAL_CONTENT);
 		
-		byte[] buf = new byte[4096];
-		int len;
+		if (ranges.length == 2) {
+			long first = ranges[0];
+			long length = ranges[1] - first + 1;
+			
+			if (file.content != null) {
+				res.setBody(file.content.slice((int) first, (int) length).retain());
+			} else {
+				res.sendFile(file.file, first, length);
+			}
+			
+			if (file.mime != null)
+				res.setMime(file.mime);
+			
+			res.setHeader(Names.CONTENT_RANGE, contentRange(ranges[0], ranges[1], file.length));
+			return;
+		}
 		
-		InputStream  in  = new FileInputStream(f);
+		String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+		List<Object> parts = new ArrayList<>(ranges.length + 1);
+		long total = 0;
 		
-		while((len = in.read(buf)) > -1) {
-			res.getBuffer().writeBytes(buf, 0, len);
+		try {
+			for (int i = 0; i < ranges.length; i += 2) {
+				long first = ranges[i];
+				long length = ranges[i + 1] - first + 1;
+				
+				ByteBuf head = Unpooled.copiedBuffer("\r\n--" + boundary 
+						+ (file.mime != null ? "\r\nContent-Type: " + file.mime : "")
+						+ "\r\nContent-Range: " + contentRange(ranges[i], ranges[i + 1], file.length) 
+						+ "\r\n\r\n", CharsetUtil.US_ASCII);
+				
+				parts.add(head);
+				parts.add(file.content != null 
+						? file.content.slice((int) first, (int) length).retain()
+						: new DefaultFileRegion(FileChannel.open(file.path, StandardOpenOption.READ), first, length));
+				
+				total += head.readableBytes() + length;
+			}
+		} catch (IOException e) {
+			parts.forEach(ReferenceCountUtil::release);
+			throw e;
 		}
 		
-		in.close();
+		ByteBuf tail = Unpooled.copiedBuffer("\r\n--" + boundary + "--\r\n", CharsetUtil.US_ASCII);
+		parts.add(tail);
+		total += tail.readableBytes();
+		
+		res.setBody(parts, total);
+		res.setMime("multipart/byteranges; boundary=" + boundary);
+	}
+	
+	private static String contentRange(long first, long last, long length) {
+		return "bytes " + first + '-' + last + '/' + length;
 	}
 	
 	@Override
 	public boolean call(WrappedRequest<S> req, WrappedResponse<S> res) throws IOException {
-		File dest = new File(source, req.getPath());
+		String path = req.getPath();
+		
+		if (cache != null) {
+			StaticFile file = cache.get(path);
+			
+			if (file != null) {
+				serve(file, req, res);
+				return true;
+			}
+		}
+		
+		File dest = new File(source, path);
 		
 		if (dest.exists()) {
 			if (dest.isFile()) {
-				serveFile(dest, res);
+				serveFile(path, dest, false, req, res);
 			} else {
 				for (String i : INDICE) {
 					File index = new File(dest, i);
 					
 					if (index.exists()) {
-						serveFile(index, res);
+						serveFile(path, index, true, req, res);
 						return true;
 					}
 				}
@@ -0,0 +1,169 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+
+import java.io.IOException;
+
+import com.lukasdietrich.lambdatra.NettyHandler;
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.reaction.CallbackAdapter;
+import com.lukasdietrich.lambdatra.routing.PathParams;
+import com.lukasdietrich.lambdatra.session.SessionStore;
+
+/**
+ * {@link Adapter} for {@link StreamCallback}
+ * <br>
+ * If the route is the first one matching a request, the body is
+ * streamed chunk by chunk. Otherwise the aggregated body is passed
+ * to the {@link BodyHandler} as a single chunk.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class StreamAdapter<S> extends CallbackAdapter<StreamCallback<S>> {
+	
+	private SessionStore<S> sessions;
+	
+	public StreamAdapter(StreamCallback<S> callback, SessionStore<S> sessions) {
+		super(callback);
+		
+		this.sessions = sessions;
+	}
+	
+	@Override
+	public boolean isStreaming() {
+		return true;
+	}
+	
+	@Override
+	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) throws IOException {
+		Stream stream = newStream(handler, ctx, req, params);
+		stream.content(req.content());
+		stream.complete();
+		
+		return true;
+	}
+	
+	/**
+	 * Starts a streamed request. The {@link NettyHandler} queues further
+	 * requests until the stream is completed or failed.
+	 * 
+	 * @param handler {@link NettyHandler} of the channel
+	 * @param ctx {@link ChannelHandlerContext} to respond with
+	 * @param req request headers
+	 * @param params url parameters of the matched route
+	 * @return a {@link Stream} to feed the body to
+	 * @throws IOException may throw an exception on write failure
+	 */
+	public Stream open(NettyHandler handler, ChannelHandlerContext ctx, HttpRequest req, PathParams params) throws IOException {
+		Stream stream = newStream(handler, ctx, req, params);
+		
+		stream.streamed = true;
+		handler.startStream(ctx);
+		
+		return stream;
+	}
+	
+	private Stream newStream(NettyHandler handler, ChannelHandlerContext ctx, HttpRequest req, PathParams params) throws IOException {
+		WrappedRequest<S> wreq = new WrappedRequest<>(req, params, sessions, ctx.executor());
+		Stream stream = new Stream(handler, ctx, wreq);
+		
+		stream.body = getCallback().call(wreq, stream);
+		return stream;
+	}
+	
+	/**
+	 * A streamed request in progress
+	 * 
+	 * @author Lukas Dietrich
+	 *
+	 */
+	public final class Stream implements FlowControl {
+		
+		private NettyHandler handler;
+		private ChannelHandlerContext ctx;
+		private WrappedRequest<S> req;
+		private BodyHandler<S> body;
+		private boolean streamed;
+		
+		private Stream(NettyHandler handler, ChannelHandlerContext ctx, WrappedRequest<S> req) {
+			this.handler = handler;
+			this.ctx = ctx;
+			this.req = req;
+		}
+		
+		/**
+		 * Passes a chunk of the body to the {@link BodyHandler}.
+		 * 
+		 * @param chunk part of the body
+		 * @throws IOException may throw an exception on processing failure
+		 */
+		public void content(ByteBuf chunk) throws IOException {
+			if (chunk.isReadable())
+				body.onContent(chunk);
+		}
+		
+		/**
+		 * Lets the {@link BodyHandler} respond after the last chunk.
+		 * 
+		 * @throws IOException may throw an exception on write failure
+		 */
+		public void complete() throws IOException {
+			WrappedResponse<S> res = new WrappedResponse<>(handler, ctx, req, sessions);
+			
+			try {
+				body.onComplete(res);
+			} catch (IOException | RuntimeException e) {
+				res.discard();
+				
+				if (res.isCommitted())
+					ctx.close();
+				
+				throw e;
+			}
+			
+			res.send();
+			end();
+		}
+		
+		/**
+		 * Notifies the {@link BodyHandler} of a failure and answers
+		 * the request with an error, if the channel is still open.
+		 * 
+		 * @param cause reason of the failure
+		 */
+		public void fail(Throwable cause) {
+			if (body != null)
+				body.onError(cause);
+			
+			if (ctx.channel().isActive())
+				handler.fail(ctx, req.getRequest(), cause);
+			
+			end();
+		}
+
+		@Override
+		public void pause() {
+			if (streamed)
+				handler.pauseStream(ctx, true);
+		}
+
+		@Override
+		public void resume() {
+			if (streamed)
+				handler.pauseStream(ctx, false);
+		}
+		
+		private void end() {
+			if (streamed) {
+				streamed = false;
+				handler.endStream(ctx);
+			}
+		}
+		
+	}
+	
+}
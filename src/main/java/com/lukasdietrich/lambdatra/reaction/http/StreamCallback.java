@@ -0,0 +1,25 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import java.io.IOException;
+
+/**
+ * Callback for HTTP requests, that receive their body
+ * in chunks as it arrives instead of aggregated in memory.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+@FunctionalInterface
+public interface StreamCallback<S> {
+
+	/**
+	 * Called once the request headers arrived.
+	 * 
+	 * @param req Request without body
+	 * @param flow {@link FlowControl} to pause reading from the connection
+	 * @return a {@link BodyHandler} to receive the body and respond
+	 * @throws IOException may throw an exception on write failure
+	 */
+	public BodyHandler<S> call(WrappedRequest<S> req, FlowControl flow) throws IOException;
+	
+}
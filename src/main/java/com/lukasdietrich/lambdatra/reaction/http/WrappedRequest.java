@@ -1,6 +1,7 @@
 package com.lukasdietrich.lambdatra.reaction.http;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaders.Names;
 import io.netty.handler.codec.http.HttpRequest;
@@ -9,7 +10,11 @@ import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import io.netty.handler.codec.http.multipart.DefaultHttpDataFactory;
 import io.netty.handler.codec.http.multipart.HttpPostRequestDecoder;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
+import io.netty.util.concurrent.EventExecutor;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -17,39 +22,128 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
+import com.lukasdietrich.lambdatra.routing.PathParams;
 import com.lukasdietrich.lambdatra.session.SessionStore;
 
 /**
  * Wraps {@link HttpRequest} into a simpler class
  * and combines it with access to parsed url query
  * and parameters.
+ * <br>
+ * The query and cookies are parsed on first access,
+ * so handlers not reading them do not pay for it.
  * 
  * @author Lukas Dietrich
  *
  */
 public final class WrappedRequest<S> {
 	
-	private FullHttpRequest req;
+	private static final Recycler<WrappedRequest<?>> RECYCLER = new Recycler<WrappedRequest<?>>() {
+		@Override
+		protected WrappedRequest<?> newObject(Handle handle) {
+			return new WrappedRequest<>(handle);
+		}
+	};
+	
+	private Handle handle;
+	private HttpRequest req;
 	private QueryStringDecoder query;
 	
-	private Map<String, String> params;
+	private PathParams params;
 	private Map<String, Cookie> cookies;
 	private SessionStore<S> sessions;
+	private EventExecutor executor;
+	
+	public WrappedRequest(HttpRequest req, PathParams params, SessionStore<S> sessions) {
+		this(req, params, sessions, null);
+	}
 	
-	public WrappedRequest(FullHttpRequest req, Map<String, String> params, SessionStore<S> sessions) {
+	/**
+	 * @param req the request
+	 * @param params url parameters of the matched route
+	 * @param sessions {@link SessionStore} to use
+	 * @param executor event loop of the channel, on which sessions are not waited for
+	 */
+	public WrappedRequest(HttpRequest req, PathParams params, SessionStore<S> sessions, EventExecutor executor) {
 		this.req = req;
 		this.params = params;
-		this.query = new QueryStringDecoder(req.getUri());
-		this.cookies = new HashMap<>();
 		this.sessions = sessions;
+		this.executor = executor;
+	}
+	
+	private WrappedRequest(Handle handle) {
+		this.handle = handle;
+	}
+	
+	/**
+	 * Returns a recycled {@link WrappedRequest} of the current thread.
+	 * It must not be used after {@link #recycle()}.
+	 * 
+	 * @param req the request
+	 * @param params url parameters of the matched route
+	 * @param sessions {@link SessionStore} to use
+	 * @param executor event loop of the channel
+	 * @return a request wrapper
+	 */
+	@SuppressWarnings("unchecked")
+	static <S> WrappedRequest<S> newInstance(HttpRequest req, PathParams params, SessionStore<S> sessions, 
+			EventExecutor executor) {
+		WrappedRequest<S> wreq = (WrappedRequest<S>) RECYCLER.get();
+		wreq.req = req;
+		wreq.params = params;
+		wreq.sessions = sessions;
+		wreq.executor = executor;
+		return wreq;
+	}
+	
+	/**
+	 * Returns a wrapper obtained by {@link #newInstance(HttpRequest, PathParams, SessionStore, EventExecutor)}
+	 * to be reused by a later request.
+	 */
+	void recycle() {
+		if (handle != null) {
+			req = null;
+			query = null;
+			params = null;
+			cookies = null;
+			sessions = null;
+			executor = null;
+			RECYCLER.recycle(this, handle);
+		}
+	}
+	
+	private QueryStringDecoder query() {
+		if (query == null)
+			query = new QueryStringDecoder(req.getUri());
 		
-		{
-			getHeader(Names.COOKIE).ifPresent(header -> {
+		return query;
+	}
+	
+	private Map<String, Cookie> cookies() {
+		if (cookies == null) {
+			String header = req.headers().get(Names.COOKIE);
+			
+			if (header == null) {
+				cookies = Collections.emptyMap();
+			} else {
+				cookies = new HashMap<>();
+				
 				for (Cookie c : ServerCookieDecoder.LAX.decode(header)) {
 					cookies.put(c.name(), c);
 				}
-			});
+			}
 		}
+		
+		return cookies;
+	}
+	
+	/**
+	 * Returns the underlying {@link HttpRequest}
+	 * 
+	 * @return the request
+	 */
+	protected HttpRequest getRequest() {
+		return req;
 	}
 	
 	/**
@@ -79,7 +173,7 @@ public final class WrappedRequest<S> {
 	 * @return query value
 	 */
 	public Optional<List<String>> getQuery(String key) {
-		return Optional.ofNullable(query.parameters().get(key));
+		return Optional.ofNullable(query().parameters().get(key));
 	}
 	
 	/**
@@ -92,16 +186,21 @@ public final class WrappedRequest<S> {
 	}
 	
 	/**
-	 * Returns the raw body
+	 * Returns the raw body. Streamed requests
+	 * return an empty buffer.
 	 * 
 	 * @return request body
 	 */
 	public ByteBuf getBody() {
-		return req.content();
+		return (req instanceof FullHttpRequest)
+				? ((FullHttpRequest) req).content()
+				: Unpooled.EMPTY_BUFFER;
 	}
 	
 	/**
-	 * Returns an {@link Optional} of the session
+	 * Returns an {@link Optional} of the session. On the event loop
+	 * of the channel, sessions that have not been loaded yet are
+	 * not waited for.
 	 * 
 	 * @return session value
 	 */
@@ -109,7 +208,7 @@ public final class WrappedRequest<S> {
 		Optional<Cookie> cookie = getSessionId();
 		
 		return (cookie.isPresent())
-				? sessions.getSession(cookie.get().value())
+				? sessions.getSession(cookie.get().value(), executor == null || !executor.inEventLoop())
 				: Optional.empty();
 	}
 	
@@ -129,7 +228,7 @@ public final class WrappedRequest<S> {
 	 * @return set of of cookies
 	 */
 	public Set<Cookie> getCookies() {
-		return new HashSet<>(cookies.values());
+		return new HashSet<>(cookies().values());
 	}
 	
 	/**
@@ -139,7 +238,7 @@ public final class WrappedRequest<S> {
 	 * @return a cookie
 	 */
 	public Optional<Cookie> getCookie(String key) {
-		return Optional.ofNullable(cookies.get(key));
+		return Optional.ofNullable(cookies().get(key));
 	}
 	
 	/**
@@ -150,7 +249,7 @@ public final class WrappedRequest<S> {
 	 * @return the requested path
 	 */
 	public String getPath()  {
-		return query.path();
+		return query().path();
 	}
 	
 }
@@ -2,47 +2,417 @@ package com.lukasdietrich.lambdatra.reaction.http;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders.Names;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.DefaultCookie;
 import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
+import io.netty.util.ReferenceCountUtil;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
+import java.util.function.Predicate;
 
+import com.lukasdietrich.lambdatra.ConstantResponse;
+import com.lukasdietrich.lambdatra.NettyHandler;
 import com.lukasdietrich.lambdatra.session.SessionStore;
 
 /**
  * Wraps {@link HttpResponse} into a simpler class.
+ * <br>
+ * Output is buffered and sent as a whole once the callback is done,
+ * unless {@link #stream()} is called. Headers are then written
+ * immediately and the output follows in chunks.
  * 
  * @author Lukas Dietrich
  *
  */
 public final class WrappedResponse<S> extends OutputStream {
+	
+	/**
+	 * Default amount of buffered bytes after which a chunk is sent
+	 */
+	public static final int DEFAULT_FLUSH_THRESHOLD = 8192;
+	
+	private static final Recycler<WrappedResponse<?>> RECYCLER = new Recycler<WrappedResponse<?>>() {
+		@Override
+		protected WrappedResponse<?> newObject(Handle handle) {
+			return new WrappedResponse<>(handle);
+		}
+	};
 
+	private Handle handle;
+	private NettyHandler handler;
+	private ChannelHandlerContext ctx;
 	private WrappedRequest<S> req;
-	private FullHttpResponse res;
+	private HttpResponse res;
+	private ByteBuf content;
+	private FileChannel file;
+	private long offset;
+	private long length;
+	private List<Object> parts;
 	private SessionStore<S> sessions;
 	
 	private List<Cookie> cookies;
 	
+	private boolean compress = true;
+	private boolean detached;
+	private boolean committed;
+	private boolean keepAlive;
+	private int threshold;
+	
+	public WrappedResponse(NettyHandler handler, ChannelHandlerContext ctx, WrappedRequest<S> req, SessionStore<S> sessions) {
+		this.handler = handler;
+		this.ctx = ctx;
+		this.req = req;
+		this.sessions = sessions;
+	}
+	
+	/**
+	 * Wraps a complete response, which receives headers and output
+	 * and has to be sent by the caller. Such a wrapper can not be
+	 * streamed and does not send any body set by {@link #sendFile(File)}.
+	 * 
+	 * @deprecated responses are buffered and sent by the wrapper itself,
+	 * 			use {@link #WrappedResponse(NettyHandler, ChannelHandlerContext, WrappedRequest, SessionStore)}
+	 * @param req the request being answered
+	 * @param res response to write to
+	 * @param sessions {@link SessionStore} to use
+	 */
+	@Deprecated
 	public WrappedResponse(WrappedRequest<S> req, FullHttpResponse res, SessionStore<S> sessions) {
 		this.req = req;
 		this.res = res;
+		this.content = res.content();
 		this.sessions = sessions;
-		this.cookies = new Vector<>();
+	}
+	
+	private WrappedResponse(Handle handle) {
+		this.handle = handle;
+	}
+	
+	/**
+	 * Returns a recycled {@link WrappedResponse} of the current thread.
+	 * It must not be used after {@link #recycle()}.
+	 * 
+	 * @param handler {@link NettyHandler} of the channel
+	 * @param ctx {@link ChannelHandlerContext} to respond with
+	 * @param req the request being answered
+	 * @param sessions {@link SessionStore} to use
+	 * @return a response wrapper
+	 */
+	@SuppressWarnings("unchecked")
+	static <S> WrappedResponse<S> newInstance(NettyHandler handler, ChannelHandlerContext ctx, 
+			WrappedRequest<S> req, SessionStore<S> sessions) {
+		WrappedResponse<S> wres = (WrappedResponse<S>) RECYCLER.get();
+		wres.handler = handler;
+		wres.ctx = ctx;
+		wres.req = req;
+		wres.sessions = sessions;
+		return wres;
+	}
+	
+	/**
+	 * Returns a wrapper obtained by {@link #newInstance(NettyHandler, ChannelHandlerContext, WrappedRequest, SessionStore)}
+	 * to be reused by a later response. It has to be sent or discarded before.
+	 */
+	void recycle() {
+		if (handle != null) {
+			discard();
+			handler = null;
+			ctx = null;
+			req = null;
+			res = null;
+			sessions = null;
+			cookies = null;
+			offset = 0;
+			length = 0;
+			compress = true;
+			detached = false;
+			committed = false;
+			keepAlive = false;
+			threshold = 0;
+			RECYCLER.recycle(this, handle);
+		}
+	}
+	
+	/**
+	 * Returns the response headers, which are only created
+	 * once they are needed.
+	 * 
+	 * @return response headers
+	 */
+	private HttpResponse response() {
+		if (res == null)
+			res = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+		
+		return res;
 	}
 	
 	/**
 	 * Applies <i>cached</i> header values
 	 */
 	protected void applyHeader() {
-		setHeader(Names.SET_COOKIE, ServerCookieEncoder.LAX.encode(cookies));
+		if (cookies != null)
+			setHeader(Names.SET_COOKIE, ServerCookieEncoder.LAX.encode(cookies));
+	}
+	
+	/**
+	 * Applies headers and writes the response to the channel.
+	 * A streamed response is terminated with the remaining output.
+	 */
+	protected void send() throws IOException {
+		if (!compress && !committed)
+			handler.skipCompression(ctx);
+		
+		if (parts != null) {
+			applyHeader();
+			handler.sendParts(ctx, req.getRequest(), response(), parts, length);
+			parts = null;
+		} else if (file != null) {
+			applyHeader();
+			FileChannel f = file;
+			file = null;
+			
+			try {
+				handler.sendFile(ctx, req.getRequest(), response(), f, offset, length);
+			} catch (IOException e) {
+				f.close();
+				throw e;
+			}
+		} else if (committed) {
+			LastHttpContent last = content == null
+					? LastHttpContent.EMPTY_LAST_CONTENT
+					: new DefaultLastHttpContent(content);
+			
+			content = null;
+			
+			ChannelFuture future = ctx.writeAndFlush(last);
+			
+			if (!keepAlive)
+				future.addListener(ChannelFutureListener.CLOSE);
+		} else {
+			applyHeader();
+			handler.send(ctx, req.getRequest(), response(), content == null ? Unpooled.EMPTY_BUFFER : content);
+			content = null;
+		}
+	}
+	
+	/**
+	 * Releases buffered output without sending it, 
+	 * if the request was not fulfilled.
+	 */
+	protected void discard() {
+		if (content != null) {
+			content.release();
+			content = null;
+		}
+		
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			file = null;
+		}
+		
+		if (parts != null) {
+			parts.forEach(ReferenceCountUtil::release);
+			parts = null;
+		}
+	}
+	
+	/**
+	 * Replaces any written output by a buffer, which is
+	 * released once it has been sent or discarded.
+	 * 
+	 * @param body response body
+	 */
+	protected void setBody(ByteBuf body) {
+		checkCommitted();
+		discard();
+		
+		this.content = body;
+	}
+	
+	/**
+	 * Replaces any written output by a sequence of {@link ByteBuf}s
+	 * and {@link io.netty.channel.FileRegion}s, which are released once
+	 * they have been sent or discarded. The body is not compressed.
+	 * 
+	 * @param parts buffers and file regions to send
+	 * @param length total amount of bytes of all parts
+	 */
+	protected void setBody(List<Object> parts, long length) {
+		checkCommitted();
+		discard();
+		
+		this.parts = parts;
+		this.length = length;
+	}
+	
+	/**
+	 * Sends a file as the body instead of any written output.
+	 * 
+	 * @see #sendFile(File, long, long)
+	 * @param f file to send
+	 * @throws IOException if the file can not be opened
+	 */
+	public void sendFile(File f) throws IOException {
+		sendFile(f, 0, f.length());
+	}
+	
+	/**
+	 * Sends a region of a file as the body instead of any written output.
+	 * The file is written directly from the page cache to the socket,
+	 * unless the response has to be compressed.
+	 * 
+	 * @param f file to send
+	 * @param offset position of the first byte to send
+	 * @param length amount of bytes to send
+	 * @throws IOException if the file can not be opened
+	 */
+	public void sendFile(File f, long offset, long length) throws IOException {
+		checkCommitted();
+		discard();
+		
+		this.file = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	/**
+	 * Keeps the response from being written to the channel, even if
+	 * the callback asks for streaming, so it can be taken by {@link #snapshot(Predicate)}.
+	 */
+	void detach() {
+		this.detached = true;
+	}
+	
+	/**
+	 * Copies the buffered response, so it can be sent again
+	 * without running the callback.
+	 * 
+	 * @param cacheable decides on the status and headers whether to copy
+	 * @return a copy, or null if the response is not cacheable,
+	 * 			streamed or has a file as body
+	 */
+	ConstantResponse snapshot(Predicate<HttpResponse> cacheable) {
+		if (committed || file != null || parts != null)
+			return null;
+		
+		applyHeader();
+		
+		if (!cacheable.test(response()))
+			return null;
+		
+		ByteBuf body = Unpooled.directBuffer(content == null ? 0 : content.readableBytes());
+		
+		if (content != null)
+			body.writeBytes(content, content.readerIndex(), content.readableBytes());
+		
+		return new ConstantResponse(response(), body, compress);
+	}
+	
+	/**
+	 * Whether or not the headers have already been written
+	 * by {@link #stream()}. A committed response can not be
+	 * discarded anymore and has to be finished by {@link #send()}
+	 * or by closing the connection.
+	 * 
+	 * @return true if the response is being streamed
+	 */
+	protected boolean isCommitted() {
+		return committed;
+	}
+	
+	/**
+	 * Switches to streaming using the {@link #DEFAULT_FLUSH_THRESHOLD}.
+	 * 
+	 * @see #stream(int)
+	 */
+	public void stream() {
+		stream(DEFAULT_FLUSH_THRESHOLD);
+	}
+	
+	/**
+	 * Writes the headers immediately and sends any further output
+	 * in chunks, as soon as at least <code>flushThreshold</code> bytes
+	 * are buffered or {@link #flush()} is called. Status and headers
+	 * can not be changed afterwards.
+	 * <br>
+	 * Unless a content length is set, the response uses chunked
+	 * transfer encoding. HTTP/1.0 clients do not support it, so the
+	 * output is buffered and sent as a whole in that case.
+	 * 
+	 * @param flushThreshold amount of bytes to buffer per chunk
+	 */
+	public void stream(int flushThreshold) {
+		if (committed || detached)
+			return;
+		
+		this.threshold = flushThreshold;
+		
+		if (!HttpHeaders.isContentLengthSet(response())) {
+			if (!req.getRequest().getProtocolVersion().isKeepAliveDefault())
+				return;
+			
+			HttpHeaders.setTransferEncodingChunked(response());
+		}
+		
+		applyHeader();
+		
+		keepAlive = handler.keepAlive(req.getRequest(), response());
+		committed = true;
+		
+		if (!compress)
+			handler.skipCompression(ctx);
+		
+		ctx.write(response());
+		written();
+	}
+	
+	/**
+	 * Sends the buffered output as a chunk, if the response
+	 * is being streamed.
+	 */
+	@Override
+	public void flush() {
+		if (committed && content != null && content.isReadable()) {
+			ctx.writeAndFlush(new DefaultHttpContent(content));
+			content = null;
+		}
+	}
+	
+	private void written() {
+		if (committed && content != null && content.readableBytes() >= threshold)
+			flush();
+	}
+	
+	private void checkCommitted() {
+		if (committed)
+			throw new IllegalStateException("Response has already been committed.");
 	}
 	
 	/**
@@ -52,7 +422,8 @@ public final class WrappedResponse<S> extends OutputStream {
 	 * @param value header value
 	 */
 	public void setHeader(String key, String value) {
-		res.headers().set(key.toString(), value);
+		checkCommitted();
+		response().headers().set(key.toString(), value);
 	}
 	
 	/**
@@ -62,7 +433,8 @@ public final class WrappedResponse<S> extends OutputStream {
 	 * @param values list of values
 	 */
 	public void setHeader(String key, Iterable<String> values) {
-		res.headers().set(key, values);
+		checkCommitted();
+		response().headers().set(key, values);
 	}
 	
 	/**
@@ -71,7 +443,20 @@ public final class WrappedResponse<S> extends OutputStream {
 	 * @param status header statuscode
 	 */
 	public void setStatus(HttpResponseStatus status) {
-		res.setStatus(status);
+		checkCommitted();
+		response().setStatus(status);
+	}
+	
+	/**
+	 * Enables or disables compression of this response. Enabled
+	 * responses are still subject to the {@link com.lukasdietrich.lambdatra.CompressionPolicy}
+	 * of the server.
+	 * 
+	 * @param compress false to send the body uncompressed
+	 */
+	public void setCompression(boolean compress) {
+		checkCommitted();
+		this.compress = compress;
 	}
 	
 	/**
@@ -101,6 +486,10 @@ public final class WrappedResponse<S> extends OutputStream {
 	 * @param cookie cookie to be set
 	 */
 	public void setCookie(Cookie cookie) {
+		checkCommitted();
+		if (cookies == null)
+			cookies = new ArrayList<>();
+		
 		cookies.add(cookie);
 	}
 	
@@ -117,10 +506,18 @@ public final class WrappedResponse<S> extends OutputStream {
 	}
 	
 	/**
-	 * Invalidates the current session id, if any is present.
+	 * Invalidates the current session id, if any is present,
+	 * and removes the cookie from the client.
 	 */
 	public void stopSession() {
-		req.getSessionId().ifPresent(c -> sessions.stopSession(c.value()));
+		req.getSessionId().ifPresent(c -> {
+			sessions.stopSession(c.value());
+			
+			Cookie cookie = new DefaultCookie(sessions.getCookieKey(), "");
+			cookie.setPath("/");
+			cookie.setMaxAge(0);
+			setCookie(cookie);
+		});
 	}
 	
 	/**
@@ -129,7 +526,10 @@ public final class WrappedResponse<S> extends OutputStream {
 	 * @return response buffer
 	 */
 	protected ByteBuf getBuffer() {
-		return res.content();
+		if (content == null)
+			content = ctx.alloc().buffer();
+		
+		return content;
 	}
 
 	/**
@@ -139,21 +539,25 @@ public final class WrappedResponse<S> extends OutputStream {
 	 */
 	public void write(String text) {
 		ByteBufUtil.writeUtf8(getBuffer(), text);
+		written();
 	}
 	
 	@Override
 	public void write(int b) throws IOException {
 		getBuffer().writeByte(b);
+		written();
 	}
 
 	@Override
 	public void write(byte[] b, int off, int len) throws IOException {
 		getBuffer().writeBytes(b, off, len);
+		written();
 	}
 
 	@Override
 	public void write(byte[] b) throws IOException {
 		getBuffer().writeBytes(b);
+		written();
 	}
 	
 }
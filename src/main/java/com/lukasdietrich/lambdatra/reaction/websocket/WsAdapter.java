@@ -18,13 +18,13 @@ import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
 
 import java.io.IOException;
-import java.util.Map;
 import java.util.function.BiConsumer;
 
 import com.lukasdietrich.lambdatra.NettyHandler;
 import com.lukasdietrich.lambdatra.reaction.Adapter;
 import com.lukasdietrich.lambdatra.reaction.CallbackAdapter;
 import com.lukasdietrich.lambdatra.reaction.http.WrappedRequest;
+import com.lukasdietrich.lambdatra.routing.PathParams;
 import com.lukasdietrich.lambdatra.session.SessionStore;
 
 /**
@@ -45,7 +45,7 @@ public class WsAdapter<S> extends CallbackAdapter<WsCallback<S>> {
 	}
 
 	@Override
-	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, Map<String, String> params) throws IOException {
+	public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) throws IOException {
 		WebSocketServerHandshaker handshaker = new WebSocketServerHandshakerFactory(
 													String.format("ws://%s%s", req.headers().get(Names.HOST), pattern), 
 													null, 
@@ -55,7 +55,7 @@ public class WsAdapter<S> extends CallbackAdapter<WsCallback<S>> {
 		if (handshaker == null) {
 			WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
 		} else {
-			WebSocket ws = getCallback().newInstance(new WrappedRequest<>(req, params, sessions));
+			WebSocket ws = getCallback().newInstance(new WrappedRequest<>(req, params, sessions, ctx.executor()));
 			
 			if (ws instanceof WebSocket) {
 				Channel ch = handshaker.handshake(ctx.channel(), req).channel();
@@ -65,8 +65,7 @@ public class WsAdapter<S> extends CallbackAdapter<WsCallback<S>> {
 				FullHttpResponse forbidden = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.FORBIDDEN);
 				ByteBufUtil.writeUtf8(forbidden.content(), "Forbidden.");
 				
-				ctx.writeAndFlush(forbidden);
-				ctx.close();
+				handler.send(ctx, req, forbidden);
 			}
 		}
 		
@@ -0,0 +1,76 @@
+package com.lukasdietrich.lambdatra.routing;
+
+/**
+ * Flyweight view of the url parameters of a matched {@link Route}.
+ * <br>
+ * Values are stored as offsets into the requested path and
+ * only turned into {@link String}s on access. An instance is
+ * owned by {@link RouteMatches} and repositioned for every
+ * candidate, so it must not be kept beyond the request.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public final class PathParams {
+	
+	private String path;
+	private String[] names;
+	private int[] bounds;
+	private int offset;
+	
+	PathParams() {
+		this.names = new String[0];
+	}
+	
+	void set(String path, String[] names, int[] bounds, int offset) {
+		this.path = path;
+		this.names = names;
+		this.bounds = bounds;
+		this.offset = offset;
+	}
+	
+	/**
+	 * Returns the number of parameters
+	 * 
+	 * @return number of parameters
+	 */
+	public int size() {
+		return names.length;
+	}
+	
+	/**
+	 * Returns the name of the parameter at a given index
+	 * 
+	 * @param index position in the pattern
+	 * @return parameter name
+	 */
+	public String getName(int index) {
+		return names[index];
+	}
+	
+	/**
+	 * Returns the value of the parameter at a given index
+	 * 
+	 * @param index position in the pattern
+	 * @return parameter value
+	 */
+	public String getValue(int index) {
+		return path.substring(bounds[offset + index * 2], bounds[offset + index * 2 + 1]);
+	}
+	
+	/**
+	 * Returns the value of a parameter by name or null,
+	 * if the pattern does not contain it.
+	 * 
+	 * @param name parameter name
+	 * @return parameter value or null
+	 */
+	public String get(String name) {
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equals(name))
+				return getValue(i);
+		
+		return null;
+	}
+	
+}
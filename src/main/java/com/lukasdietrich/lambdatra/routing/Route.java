@@ -1,42 +1,37 @@
 package com.lukasdietrich.lambdatra.routing;
 
-import java.util.Map;
-import java.util.Optional;
-
 import com.lukasdietrich.lambdatra.reaction.Adapter;
 
 /**
- * Container for a {@link Adapter} bound to a {@link RoutePattern}
+ * Container for a {@link Adapter} bound to a url pattern
  * 
  * @author Lukas Dietrich
  *
  */
 public class Route {
 	
-	private RoutePattern pattern;
+	private String pattern;
 	private Adapter adapter;
 	
 	/**
 	 * Creates a {@link Route} that holds both, 
-	 * an {@link Adapter} and a {@link RoutePattern}.
+	 * an {@link Adapter} and its url pattern.
 	 * 
 	 * @param pattern url pattern to match requests against
 	 * @param adapter an {@link Adapter} to handle requests on match
 	 */
 	public Route(String pattern, Adapter adapter) {
-		this.pattern = new RoutePattern(pattern);
+		this.pattern = pattern;
 		this.adapter = adapter;
 	}
 	
 	/**
-	 * Exposes {@link RoutePattern#match(String)}.
+	 * Returns the url pattern
 	 * 
-	 * @see RoutePattern#match(String)
-	 * @param path requested path
-	 * @return an {@link Optional} of parameters or an empty {@link Optional}
+	 * @return the pattern this route was registered with
 	 */
-	public Optional<Map<String, String>> match(String path) {
-		return pattern.match(path);
+	public String getPattern() {
+		return this.pattern;
 	}
 	
 	/**
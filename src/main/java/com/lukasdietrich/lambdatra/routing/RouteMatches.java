@@ -0,0 +1,101 @@
+package com.lukasdietrich.lambdatra.routing;
+
+import java.util.Arrays;
+
+/**
+ * Reusable result of {@link Router#match(String, RouteMatches)}.
+ * <br>
+ * Holds the matched {@link Route}s in registration order and the
+ * offsets of their parameters. One instance is meant to be kept per
+ * channel, so routing a request does not allocate once the internal
+ * arrays have grown to fit.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public final class RouteMatches {
+	
+	private final RouteTree.Collector collector = this::add;
+	private final PathParams params = new PathParams();
+	
+	private String path;
+	private int size;
+	
+	private RouteTree.Leaf[] leaves = new RouteTree.Leaf[4];
+	private int[] offsets = new int[4];
+	private int[] bounds = new int[16];
+	private int[] scratch = new int[16];
+	private int used;
+	
+	void reset(String path) {
+		Arrays.fill(leaves, 0, size, null);
+		
+		this.path = path;
+		this.size = 0;
+		this.used = 0;
+	}
+	
+	RouteTree.Collector collector() {
+		return collector;
+	}
+	
+	int[] scratch() {
+		return scratch;
+	}
+	
+	private void add(RouteTree.Leaf leaf, String path, int[] found, int count) {
+		if (size == leaves.length) {
+			leaves = Arrays.copyOf(leaves, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2);
+		}
+		
+		if (used + count > bounds.length)
+			bounds = Arrays.copyOf(bounds, Math.max(bounds.length * 2, used + count));
+		
+		System.arraycopy(found, 0, bounds, used, count);
+		
+		int i = size++;
+		
+		while (i > 0 && leaves[i - 1].order > leaf.order) {
+			leaves[i] = leaves[i - 1];
+			offsets[i] = offsets[i - 1];
+			i--;
+		}
+		
+		leaves[i] = leaf;
+		offsets[i] = used;
+		used += count;
+	}
+	
+	/**
+	 * Returns the number of matched {@link Route}s
+	 * 
+	 * @return number of matches
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the matched {@link Route} at a given index
+	 * 
+	 * @param index position in registration order
+	 * @return matched route
+	 */
+	public Route getRoute(int index) {
+		return leaves[index].route;
+	}
+	
+	/**
+	 * Positions the shared {@link PathParams} on the match
+	 * at a given index and returns it.
+	 * 
+	 * @param index position in registration order
+	 * @return parameters of the match
+	 */
+	public PathParams getParams(int index) {
+		params.set(path, leaves[index].names, bounds, offsets[index]);
+		return params;
+	}
+	
+}
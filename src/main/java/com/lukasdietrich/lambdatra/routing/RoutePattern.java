@@ -1,10 +1,10 @@
 package com.lukasdietrich.lambdatra.routing;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,7 +28,7 @@ public class RoutePattern {
 	 * @param simple pattern as a {@link String}
 	 */
 	public RoutePattern(String simple) {
-		this.names = new Vector<>();
+		this.names = new ArrayList<>();
 		
 		boolean absolute = true;
 		
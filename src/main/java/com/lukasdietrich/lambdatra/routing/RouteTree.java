@@ -0,0 +1,252 @@
+package com.lukasdietrich.lambdatra.routing;
+
+import java.util.Arrays;
+
+/**
+ * Prefix tree of {@link Route}s, split into path segments.
+ * <br>
+ * Static segments are looked up by hash, parameters (<code>:name</code>)
+ * match any non-empty segment and a trailing <code>/*</code> matches
+ * any remaining subpath. A lookup therefore depends on the length of
+ * the requested path, not on the number of registered routes.
+ *
+ * @author Lukas Dietrich
+ *
+ */
+class RouteTree {
+
+	private Node root;
+
+	RouteTree() {
+		this.root = new Node();
+	}
+
+	/**
+	 * Adds a {@link Route} to the tree.
+	 *
+	 * @param route route to add
+	 * @param order registration index used to sort matches
+	 * @throws IllegalArgumentException if a segment contains a parameter,
+	 * 			that does not span the whole segment
+	 */
+	void insert(Route route, int order) {
+		String simple = route.getPattern();
+		boolean prefix = false;
+
+		if (simple.endsWith("/*")) {
+			prefix = true;
+			simple = simple.substring(0, simple.length() - 2);
+		}
+
+		String[] segments = simple.split("/", -1);
+		String[] names = new String[segments.length];
+		int params = 0;
+
+		Node node = root;
+
+		for (String segment : segments) {
+			if (isParam(segment)) {
+				names[params++] = segment.substring(1);
+				node = node.param();
+			} else if (segment.indexOf(':') >= 0) {
+				throw new IllegalArgumentException("Parameters must span a whole segment: " + route.getPattern() + " !");
+			} else {
+				node = node.child(segment);
+			}
+		}
+
+		Leaf leaf = new Leaf(route, order, Arrays.copyOf(names, params));
+
+		if (prefix) {
+			node.prefix = append(node.prefix, leaf);
+		} else {
+			node.exact = append(node.exact, leaf);
+		}
+	}
+
+	/**
+	 * Walks the tree for a given path and reports every matching
+	 * {@link Leaf} to the {@link Collector}.
+	 *
+	 * @param path requested path
+	 * @param scratch array to hold parameter offsets while walking
+	 * @param out receiver of matches
+	 */
+	void match(String path, int[] scratch, Collector out) {
+		walk(root, path, 0, scratch, 0, out);
+	}
+
+	private static void walk(Node node, String path, int start, int[] bounds, int count, Collector out) {
+		int end = path.indexOf('/', start);
+
+		if (end < 0)
+			end = path.length();
+
+		Node child = node.find(path, start, end);
+
+		if (child != null)
+			visit(child, path, end, bounds, count, out);
+
+		if (node.param != null && end > start) {
+			if (bounds.length < count + 2)
+				bounds = Arrays.copyOf(bounds, bounds.length * 2 + 2);
+
+			bounds[count] = start;
+			bounds[count + 1] = end;
+
+			visit(node.param, path, end, bounds, count + 2, out);
+		}
+	}
+
+	private static void visit(Node node, String path, int end, int[] bounds, int count, Collector out) {
+		for (Leaf leaf : node.prefix)
+			out.accept(leaf, path, bounds, count);
+
+		if (end == path.length()) {
+			for (Leaf leaf : node.exact)
+				out.accept(leaf, path, bounds, count);
+		} else {
+			walk(node, path, end + 1, bounds, count, out);
+		}
+	}
+
+	private static boolean isParam(String segment) {
+		if (segment.length() < 2 || segment.charAt(0) != ':')
+			return false;
+
+		for (int i = 1; i < segment.length(); i++) {
+			char c = segment.charAt(i);
+
+			if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z') && (c < '0' || c > '9'))
+				return false;
+		}
+
+		return true;
+	}
+
+	private static Leaf[] append(Leaf[] leaves, Leaf leaf) {
+		Leaf[] copy = Arrays.copyOf(leaves, leaves.length + 1);
+		copy[leaves.length] = leaf;
+		return copy;
+	}
+
+	private static int hash(String s, int from, int to) {
+		int h = 0;
+
+		for (int i = from; i < to; i++)
+			h = 31 * h + s.charAt(i);
+
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Receiver of matched {@link Leaf}s. The bounds array holds
+	 * pairs of start and end offsets of parameters in the path
+	 * and is only valid for the duration of the call.
+	 */
+	@FunctionalInterface
+	interface Collector {
+
+		void accept(Leaf leaf, String path, int[] bounds, int count);
+
+	}
+
+	/**
+	 * A {@link Route} bound to the end of a pattern
+	 */
+	static final class Leaf {
+
+		final Route route;
+		final int order;
+		final String[] names;
+
+		private Leaf(Route route, int order, String[] names) {
+			this.route = route;
+			this.order = order;
+			this.names = names;
+		}
+
+	}
+
+	private static final class Node {
+
+		private static final Leaf[] EMPTY = new Leaf[0];
+
+		private String[] keys = new String[4];
+		private int[] hashes = new int[4];
+		private Node[] nodes = new Node[4];
+		private int size;
+
+		private Node param;
+		private Leaf[] exact = EMPTY;
+		private Leaf[] prefix = EMPTY;
+
+		private Node param() {
+			if (param == null)
+				param = new Node();
+
+			return param;
+		}
+
+		private Node child(String segment) {
+			Node node = find(segment, 0, segment.length());
+
+			if (node == null) {
+				if ((size + 1) * 2 > keys.length)
+					resize();
+
+				node = new Node();
+				put(segment, hash(segment, 0, segment.length()), node);
+			}
+
+			return node;
+		}
+
+		private Node find(String path, int from, int to) {
+			if (size == 0)
+				return null;
+
+			int hash = hash(path, from, to);
+			int mask = keys.length - 1;
+
+			for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+				if (hashes[i] == hash
+						&& keys[i].length() == to - from
+						&& path.regionMatches(from, keys[i], 0, to - from))
+					return nodes[i];
+			}
+
+			return null;
+		}
+
+		private void put(String key, int hash, Node node) {
+			int mask = keys.length - 1;
+			int i = hash & mask;
+
+			while (keys[i] != null)
+				i = (i + 1) & mask;
+
+			keys[i] = key;
+			hashes[i] = hash;
+			nodes[i] = node;
+			size++;
+		}
+
+		private void resize() {
+			String[] oldKeys = keys;
+			int[] oldHashes = hashes;
+			Node[] oldNodes = nodes;
+
+			this.keys = new String[oldKeys.length * 2];
+			this.hashes = new int[oldKeys.length * 2];
+			this.nodes = new Node[oldKeys.length * 2];
+			this.size = 0;
+
+			for (int i = 0; i < oldKeys.length; i++)
+				if (oldKeys[i] != null)
+					put(oldKeys[i], oldHashes[i], oldNodes[i]);
+		}
+
+	}
+
+}
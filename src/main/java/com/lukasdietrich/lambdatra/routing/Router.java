@@ -1,66 +1,53 @@
 package com.lukasdietrich.lambdatra.routing;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Vector;
-
+/**
+ * Holds all registered {@link Route}s in a {@link RouteTree}
+ * and resolves requested paths to matching {@link Route}s.
+ * 
+ * @author Lukas Dietrich
+ *
+ */
 public class Router {
 	
-	private Vector<Route> routes;
+	private RouteTree tree;
+	private int size;
+	private boolean streaming;
 	
 	public Router() {
-		this.routes = new Vector<>();
+		this.tree = new RouteTree();
 	}
 	
-	public void addRoute(Route route) {
-		this.routes.add(route);
+	/**
+	 * Registers a {@link Route}. Routes registered first
+	 * will be tried first.
+	 * 
+	 * @param route route to add
+	 */
+	public synchronized void addRoute(Route route) {
+		this.tree.insert(route, size++);
+		this.streaming |= route.getAdapter().isStreaming();
 	}
 	
-	public Iterable<MatchedRoute> findRoute(String uri) {
-		return () -> new RouteIterator(uri);
+	/**
+	 * Returns whether any registered {@link Route}
+	 * streams request bodies.
+	 * 
+	 * @return true if a streaming route exists
+	 */
+	public boolean isStreaming() {
+		return streaming;
 	}
 	
-	private class RouteIterator implements Iterator<MatchedRoute> {
-
-		private String uri;
-		private Iterator<Route> routes;
-		
-		private Optional<MatchedRoute> next;
-		
-		private RouteIterator(String uri) {
-			this.uri = uri;
-			this.routes = Router.this.routes.iterator();
-			
-			this.findNext();
-		}
-		
-		private void findNext() {
-			while (routes.hasNext()) {
-				Route route = routes.next();
-				
-				Optional<Map<String, String>> params = route.match(uri);
-				
-				if (params.isPresent()) {
-					next = Optional.of(new MatchedRoute(route, params.get()));
-				}
-			}
-			
-			next = Optional.empty();
-		}
-		
-		@Override
-		public boolean hasNext() {
-			return next.isPresent();
-		}
-
-		@Override
-		public MatchedRoute next() {
-			MatchedRoute value = next.get();
-			findNext();
-			return value;
-		}
-		
+	/**
+	 * Collects all {@link Route}s matching the given path
+	 * in the order they were registered.
+	 * 
+	 * @param path requested path without query
+	 * @param into reusable container for the matches
+	 */
+	public void match(String path, RouteMatches into) {
+		into.reset(path);
+		tree.match(path, into.scratch(), into.collector());
 	}
 	
 }
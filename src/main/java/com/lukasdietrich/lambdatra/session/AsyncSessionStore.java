@@ -0,0 +1,46 @@
+package com.lukasdietrich.lambdatra.session;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous backend of sessions, like a networked key-value store.
+ * It is used through a {@link RemoteSessionStore}, which keeps
+ * recently used sessions close and fetches them ahead of requests.
+ * <br>
+ * Implementations must not block the calling thread.
+ * 
+ * @author Lukas Dietrich
+ *
+ * @param <E> class of session value
+ */
+public interface AsyncSessionStore<E> {
+
+	/**
+	 * Stores a session, replacing any previous value.
+	 * 
+	 * @param id session id
+	 * @param value value of session
+	 * @param lifetime time in milliseconds the session expires after not 
+	 * 			being accessed, or 0 to never expire
+	 * @return future completed once the session is stored
+	 */
+	public CompletableFuture<Void> putSession(String id, E value, long lifetime);
+	
+	/**
+	 * Deletes a session.
+	 * 
+	 * @param id session id
+	 * @return future completed once the session is deleted
+	 */
+	public CompletableFuture<Void> removeSession(String id);
+	
+	/**
+	 * Loads a session and extends its lifetime.
+	 * 
+	 * @param id session id
+	 * @return future of the session, that may be empty, if none exists
+	 */
+	public CompletableFuture<Optional<E>> getSession(String id);
+	
+}
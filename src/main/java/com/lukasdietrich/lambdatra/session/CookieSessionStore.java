@@ -0,0 +1,269 @@
+package com.lukasdietrich.lambdatra.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Stateless {@link SessionStore}, that keeps the session value in the
+ * cookie itself. Any server knowing the keys can serve any session,
+ * without shared storage.
+ * <br>
+ * The value is serialized together with its expiration date, optionally
+ * encrypted with AES-GCM and signed with HMAC-SHA256. The first key
+ * issues sessions, while all keys are accepted, so keys can be rotated
+ * by prepending a new one and dropping the oldest once its sessions
+ * expired.
+ * <br>
+ * The lifetime counts from the start of a session and is not extended
+ * on access. Stopping a session only removes the cookie from the client,
+ * a copy of it stays valid until it expires.
+ * 
+ * @author Lukas Dietrich
+ *
+ * @param <E> class of session value
+ */
+public class CookieSessionStore<E> implements SessionStore<E> {
+	
+	/**
+	 * Default maximum length of the cookie value
+	 */
+	public static final int DEFAULT_MAX_SIZE = 4000;
+	
+	private static final int ENCRYPTED = 1;
+	private static final int IV_SIZE = 12;
+	private static final int MAC_SIZE = 32;
+	
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private String cookieKey;
+	private long lifetime;
+	private SessionSerializer<E> serializer;
+	private List<Key> keys;
+	private boolean encrypted;
+	private int maxSize = DEFAULT_MAX_SIZE;
+	
+	/**
+	 * @param cookieKey name of the cookie
+	 * @param lifetime lifetime of sessions in milliseconds
+	 * @param serializer converts session values from and to bytes
+	 * @param keys secrets of at least 32 bytes, the first one signs new sessions
+	 */
+	public CookieSessionStore(String cookieKey, long lifetime, SessionSerializer<E> serializer, byte[]... keys) {
+		if (keys.length == 0)
+			throw new IllegalArgumentException("at least one key is required");
+		
+		this.cookieKey = cookieKey;
+		this.lifetime = lifetime;
+		this.serializer = serializer;
+		this.keys = new ArrayList<>();
+		
+		for (byte[] secret : keys) {
+			if (secret.length < 32)
+				throw new IllegalArgumentException("keys must have at least 32 bytes");
+			
+			this.keys.add(new Key(secret));
+		}
+	}
+	
+	/**
+	 * Encrypts session values, so clients cannot read them.
+	 * Sessions are accepted regardless of this setting.
+	 * 
+	 * @param encrypted whether to encrypt
+	 * @return this
+	 */
+	public CookieSessionStore<E> setEncrypted(boolean encrypted) {
+		this.encrypted = encrypted;
+		return this;
+	}
+	
+	/**
+	 * Limits the length of the cookie value. Browsers usually
+	 * drop cookies larger than 4096 bytes including their name
+	 * and attributes.
+	 * 
+	 * @param maxSize maximum length in characters
+	 * @return this
+	 */
+	public CookieSessionStore<E> setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	@Override
+	public String getCookieKey() {
+		return this.cookieKey;
+	}
+
+	/**
+	 * Encodes a session value into a signed cookie value.
+	 * 
+	 * @throws IllegalArgumentException if the value cannot be serialized or
+	 * 			its encoding exceeds the maximum size
+	 */
+	@Override
+	public String startSession(E value) {
+		try {
+			byte[] serialized = serializer.serialize(value);
+			ByteBuffer plain = ByteBuffer.allocate(8 + serialized.length)
+					.putLong(lifetime > 0 ? System.currentTimeMillis() + lifetime : Long.MAX_VALUE)
+					.put(serialized);
+			
+			Key key = keys.get(0);
+			byte[] body = encrypted ? key.encrypt(plain.array()) : plain.array();
+			
+			ByteBuffer token = ByteBuffer.allocate(1 + body.length + MAC_SIZE)
+					.put((byte) (encrypted ? ENCRYPTED : 0))
+					.put(body);
+			
+			token.put(key.sign(token.array(), token.position()));
+			
+			String encoded = ENCODER.encodeToString(token.array());
+			
+			if (encoded.length() > maxSize)
+				throw new IllegalArgumentException("session exceeds " + maxSize + " characters");
+			
+			return encoded;
+		} catch (IOException | GeneralSecurityException e) {
+			throw new IllegalArgumentException("session cannot be encoded", e);
+		}
+	}
+
+	/**
+	 * Does nothing, as there is no state to remove.
+	 */
+	@Override
+	public void stopSession(String id) {
+	}
+
+	@Override
+	public Optional<E> getSession(String id) {
+		if (id.length() > maxSize)
+			return Optional.empty();
+		
+		try {
+			byte[] token = DECODER.decode(id);
+			int length = token.length - MAC_SIZE;
+			
+			if (length < 1)
+				return Optional.empty();
+			
+			byte[] mac = new byte[MAC_SIZE];
+			System.arraycopy(token, length, mac, 0, MAC_SIZE);
+			
+			for (Key key : keys) {
+				if (MessageDigest.isEqual(mac, key.sign(token, length))) {
+					ByteBuffer plain = ByteBuffer.wrap((token[0] & ENCRYPTED) != 0
+							? key.decrypt(token, 1, length - 1)
+							: copy(token, 1, length - 1));
+					
+					if (plain.remaining() < 8 || plain.getLong() < System.currentTimeMillis())
+						return Optional.empty();
+					
+					return Optional.of(serializer.deserialize(copy(plain.array(), 8, plain.remaining())));
+				}
+			}
+		} catch (IllegalArgumentException | IOException | GeneralSecurityException e) {
+			// malformed or tampered cookies are no session
+		}
+		
+		return Optional.empty();
+	}
+	
+	private static byte[] copy(byte[] source, int offset, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(source, offset, copy, 0, length);
+		return copy;
+	}
+	
+	/**
+	 * Signing and encryption keys derived from a secret
+	 * 
+	 * @author Lukas Dietrich
+	 *
+	 */
+	private static class Key {
+		
+		private final SecretKeySpec signing;
+		private final SecretKeySpec encryption;
+		private final ThreadLocal<Mac> macs;
+		private final ThreadLocal<Cipher> ciphers;
+		
+		private Key(byte[] secret) {
+			try {
+				Mac derive = Mac.getInstance("HmacSHA256");
+				derive.init(new SecretKeySpec(secret, "HmacSHA256"));
+				
+				this.signing = new SecretKeySpec(derive.doFinal("sign".getBytes(StandardCharsets.US_ASCII)), "HmacSHA256");
+				this.encryption = new SecretKeySpec(derive.doFinal("encrypt".getBytes(StandardCharsets.US_ASCII)), 0, 16, "AES");
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+			
+			this.macs = ThreadLocal.withInitial(() -> {
+				try {
+					Mac mac = Mac.getInstance("HmacSHA256");
+					mac.init(signing);
+					return mac;
+				} catch (GeneralSecurityException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			
+			this.ciphers = ThreadLocal.withInitial(() -> {
+				try {
+					return Cipher.getInstance("AES/GCM/NoPadding");
+				} catch (GeneralSecurityException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+		}
+		
+		private byte[] sign(byte[] data, int length) {
+			Mac mac = macs.get();
+			mac.update(data, 0, length);
+			return mac.doFinal();
+		}
+		
+		private byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+			byte[] iv = new byte[IV_SIZE];
+			RANDOM.nextBytes(iv);
+			
+			Cipher cipher = ciphers.get();
+			cipher.init(Cipher.ENCRYPT_MODE, encryption, new GCMParameterSpec(128, iv));
+			
+			byte[] body = new byte[IV_SIZE + cipher.getOutputSize(plain.length)];
+			System.arraycopy(iv, 0, body, 0, IV_SIZE);
+			cipher.doFinal(plain, 0, plain.length, body, IV_SIZE);
+			
+			return body;
+		}
+		
+		private byte[] decrypt(byte[] data, int offset, int length) throws GeneralSecurityException {
+			if (length < IV_SIZE)
+				throw new GeneralSecurityException("truncated session");
+			
+			Cipher cipher = ciphers.get();
+			cipher.init(Cipher.DECRYPT_MODE, encryption, new GCMParameterSpec(128, data, offset, IV_SIZE));
+			
+			return cipher.doFinal(data, offset + IV_SIZE, length - IV_SIZE);
+		}
+		
+	}
+
+}
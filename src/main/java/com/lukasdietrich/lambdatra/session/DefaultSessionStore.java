@@ -1,49 +1,176 @@
 package com.lukasdietrich.lambdatra.session;
 
-import java.util.Hashtable;
-import java.util.Map;
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import com.lukasdietrich.lambdatra.session.SessionListener.Cause;
 
 /**
  * Default implementation of {@link SessionStore} using 
- * {@link Hashtable} to store data.
+ * {@link ConcurrentHashMap} to store data.
+ * <br>
+ * Sessions expire after not being accessed for their lifetime.
+ * Lookups check the expiration lazily and never block. Expired
+ * sessions are removed in the background by a hashed timing wheel,
+ * so each sweep only visits sessions that are due, instead of all.
+ * The wheels of all stores are advanced by a single daemon thread
+ * until the store is closed or no longer referenced.
+ * <br>
+ * The store may be bounded by a number of sessions and an approximate
+ * memory budget. Once exceeded, starting a session evicts the least
+ * recently used of a small sample of sessions, taken by a clock hand
+ * running over the map.
  * 
  * @author Lukas Dietrich
  *
  * @param <E> class of session value
  */
-public class DefaultSessionStore<E> implements SessionStore<E> {
+public class DefaultSessionStore<E> implements SessionStore<E>, Closeable {
+	
+	private static final int BUCKETS = 512;
+	private static final int SAMPLES = 8;
+	private static final long MIN_TICK = 100;
+	
+	private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "lambdatra-session-expiry");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/**
+	 * Approximate heap usage of a session besides its value
+	 */
+	public static final long ENTRY_OVERHEAD = 256;
 
 	private String cookieKey;
 	private long lifetime;
-	private Map<String, LifeTimeWrapper> values;
+	private long tick;
+	private ConcurrentHashMap<String, LifeTimeWrapper> values;
+	private List<Bucket> wheel;
+	private volatile long swept;
+	private ScheduledFuture<?> sweeping;
+	
+	private int maxSessions = Integer.MAX_VALUE;
+	private long maxMemory = Long.MAX_VALUE;
+	private ToLongFunction<? super E> weigher = value -> 0;
+	private SessionListener<? super E> listener;
+	private SessionListener<? super E> persistence;
+	
+	private AtomicLong memory = new AtomicLong();
+	private LongAdder evicted = new LongAdder();
+	private LongAdder expired = new LongAdder();
+	private Iterator<LifeTimeWrapper> hand;
 	
 	public DefaultSessionStore(String cookieKey, long lifetime) {
 		this.cookieKey = cookieKey;
 		this.lifetime = lifetime;
-		this.values = new Hashtable<>();
+		this.values = new ConcurrentHashMap<>();
+		this.tick = lifetime > 0 ? Math.max(MIN_TICK, lifetime / (BUCKETS / 2)) : 1000;
 	
 		if (lifetime > 0) {
-			new Timer().schedule(new TimerTask() {
-				
-				@Override
-				public void run() {
-					final long NOW = System.currentTimeMillis();
-					
-					values.keySet().forEach(key -> {
-						if (values.get(key).expires < NOW) {
-							values.remove(key);
-						}
-					});
-				}
-				
-			}, lifetime, lifetime);
+			this.wheel = new ArrayList<>(BUCKETS);
+			this.swept = System.currentTimeMillis() / tick;
+			
+			for (int i = 0; i < BUCKETS; i++)
+				wheel.add(new Bucket());
+			
+			Sweep sweep = new Sweep(this);
+			this.sweeping = sweep.future = SWEEPER.scheduleWithFixedDelay(sweep, tick, tick, TimeUnit.MILLISECONDS);
 		}
 	}
 	
+	/**
+	 * Limits the number of sessions held at once.
+	 * 
+	 * @param maxSessions maximum number of sessions
+	 * @return this
+	 */
+	public DefaultSessionStore<E> setMaxSessions(int maxSessions) {
+		if (maxSessions < 1)
+			throw new IllegalArgumentException("maxSessions must be positive");
+		
+		this.maxSessions = maxSessions;
+		return this;
+	}
+	
+	/**
+	 * Limits the approximate memory held by sessions. Each session
+	 * is accounted with {@link #ENTRY_OVERHEAD} plus the weight of its
+	 * value, which is determined once when the session is started.
+	 * 
+	 * @param maxMemory maximum memory in bytes
+	 * @param weigher estimates the size of a value in bytes
+	 * @return this
+	 */
+	public DefaultSessionStore<E> setMaxMemory(long maxMemory, ToLongFunction<? super E> weigher) {
+		this.maxMemory = maxMemory;
+		this.weigher = weigher;
+		return this;
+	}
+	
+	/**
+	 * Sets a listener to be notified of stopped, expired
+	 * and evicted sessions.
+	 * 
+	 * @param listener listener or null
+	 * @return this
+	 */
+	public DefaultSessionStore<E> setListener(SessionListener<? super E> listener) {
+		this.listener = listener;
+		return this;
+	}
+	
+	/**
+	 * @return current number of sessions
+	 */
+	public long getSize() {
+		return values.mappingCount();
+	}
+	
+	/**
+	 * @return approximate memory held by sessions in bytes
+	 */
+	public long getMemory() {
+		return memory.get();
+	}
+	
+	/**
+	 * @return number of sessions evicted since creation
+	 */
+	public long getEvictedCount() {
+		return evicted.sum();
+	}
+	
+	/**
+	 * @return number of sessions expired since creation
+	 */
+	public long getExpiredCount() {
+		return expired.sum();
+	}
+	
+	/**
+	 * Stops removing expired sessions in the background. They
+	 * still expire on lookup.
+	 */
+	@Override
+	public void close() {
+		if (sweeping != null)
+			sweeping.cancel(false);
+	}
+	
 	@Override
 	public String getCookieKey() {
 		return this.cookieKey;
@@ -52,54 +179,268 @@ public class DefaultSessionStore<E> implements SessionStore<E> {
 	@Override
 	public String startSession(E value) {
 		String key = UUID.randomUUID().toString();
-		values.put(key, new LifeTimeWrapper(value));
+		put(key, value, System.currentTimeMillis());
 		return key;
 	}
 	
+	/**
+	 * Stores a session under a given id, replacing any previous value.
+	 * 
+	 * @param key session id
+	 * @param value value of session
+	 * @param accessed time of last access in milliseconds
+	 */
+	void put(String key, E value, long accessed) {
+		LifeTimeWrapper wrapper = new LifeTimeWrapper(key, value, ENTRY_OVERHEAD + weigher.applyAsLong(value), accessed);
+		
+		memory.addAndGet(wrapper.weight);
+		LifeTimeWrapper previous = values.put(key, wrapper);
+		
+		if (previous != null)
+			memory.addAndGet(-previous.weight);
+		
+		schedule(wrapper);
+		
+		if (values.mappingCount() > maxSessions || memory.get() > maxMemory)
+			evict(wrapper);
+	}
+	
+	/**
+	 * Visits every live session.
+	 * 
+	 * @param visitor receiver of sessions
+	 */
+	void forEach(Visitor<? super E> visitor) {
+		for (LifeTimeWrapper wrapper : values.values())
+			visitor.visit(wrapper.key, wrapper.value, wrapper.accessed);
+	}
+	
+	long getLifetime() {
+		return lifetime;
+	}
+	
+	/**
+	 * Sets a listener, that is notified of removed sessions
+	 * before and independently of {@link #setListener(SessionListener)}.
+	 * 
+	 * @param persistence listener of a {@link PersistentSessionStore}
+	 */
+	void setPersistence(SessionListener<? super E> persistence) {
+		this.persistence = persistence;
+	}
+	
 	@Override
 	public void stopSession(String id) {
-		values.remove(id);
+		LifeTimeWrapper wrapper = values.remove(id);
+		
+		if (wrapper != null)
+			removed(wrapper, Cause.STOPPED);
 	}
 
 	@Override
 	public Optional<E> getSession(String id) {
 		LifeTimeWrapper wrapper = values.get(id);
-		return (wrapper != null) 
-				? Optional.of(wrapper.getValue()) 
-				: Optional.empty();
+		
+		if (wrapper == null)
+			return Optional.empty();
+		
+		long now = System.currentTimeMillis();
+		
+		if (lifetime > 0 && wrapper.expires() < now) {
+			if (values.remove(id, wrapper))
+				removed(wrapper, Cause.EXPIRED);
+			
+			return Optional.empty();
+		}
+		
+		wrapper.touch(now);
+		return Optional.of(wrapper.value);
+	}
+	
+	private void removed(LifeTimeWrapper wrapper, Cause cause) {
+		memory.addAndGet(-wrapper.weight);
+		
+		switch (cause) {
+			case EVICTED: evicted.increment(); break;
+			case EXPIRED: expired.increment(); break;
+			default: break;
+		}
+		
+		notify(persistence, wrapper, cause);
+		notify(listener, wrapper, cause);
+	}
+	
+	private void notify(SessionListener<? super E> listener, LifeTimeWrapper wrapper, Cause cause) {
+		if (listener != null) {
+			try {
+				listener.removed(wrapper.key, wrapper.value, cause);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
 	}
 	
 	/**
-	 * Associates a value with an expiration date
+	 * Evicts sessions until the store is within its bounds. Only
+	 * starting sessions in a full store synchronizes here.
+	 * 
+	 * @param started session that has just been started and is spared
+	 */
+	private synchronized void evict(LifeTimeWrapper started) {
+		while (values.mappingCount() > maxSessions || memory.get() > maxMemory) {
+			LifeTimeWrapper victim = null;
+			
+			for (int i = 0; i < SAMPLES; i++) {
+				if (hand == null || !hand.hasNext()) {
+					hand = values.values().iterator();
+					
+					if (!hand.hasNext())
+						return;
+				}
+				
+				LifeTimeWrapper candidate = hand.next();
+				
+				if (candidate == started && values.mappingCount() > 1)
+					continue;
+				
+				if (victim == null || candidate.accessed < victim.accessed)
+					victim = candidate;
+			}
+			
+			if (victim != null && values.remove(victim.key, victim))
+				removed(victim, Cause.EVICTED);
+		}
+	}
+	
+	/**
+	 * Adds a session to the bucket of its expiration, but never to
+	 * a bucket that has already been swept, where it would wait for
+	 * a whole turn of the wheel.
+	 */
+	private void schedule(LifeTimeWrapper wrapper) {
+		if (wheel != null)
+			wheel.get((int) Math.max(wrapper.expires() / tick, swept + 1) & (BUCKETS - 1)).add(wrapper);
+	}
+	
+	/**
+	 * Advances the wheel to a point in time. Sessions in passed
+	 * buckets are removed if they expired, or moved to the bucket
+	 * of their extended expiration otherwise.
+	 * 
+	 * @param now current time in milliseconds
+	 */
+	void sweep(long now) {
+		long current = now / tick;
+		
+		for (long t = Math.max(swept + 1, current - BUCKETS + 1); t <= current; t++) {
+			swept = t;
+			
+			for (LifeTimeWrapper wrapper : wheel.get((int) t & (BUCKETS - 1)).drain()) {
+				if (values.get(wrapper.key) != wrapper)
+					continue;
+				
+				if (wrapper.expires() < now) {
+					if (values.remove(wrapper.key, wrapper))
+						removed(wrapper, Cause.EXPIRED);
+				} else {
+					schedule(wrapper);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Task of the sweeper, which does not keep its store from being
+	 * collected and cancels itself once it is.
+	 */
+	private static class Sweep implements Runnable {
+		
+		private final WeakReference<DefaultSessionStore<?>> store;
+		private volatile ScheduledFuture<?> future;
+		
+		private Sweep(DefaultSessionStore<?> store) {
+			this.store = new WeakReference<>(store);
+		}
+		
+		@Override
+		public void run() {
+			DefaultSessionStore<?> s = store.get();
+			
+			if (s != null) {
+				s.sweep(System.currentTimeMillis());
+			} else if (future != null) {
+				future.cancel(false);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Receiver of sessions in {@link DefaultSessionStore#forEach(Visitor)}
+	 */
+	@FunctionalInterface
+	interface Visitor<E> {
+		
+		void visit(String id, E value, long accessed);
+		
+	}
+	
+	/**
+	 * Sessions due within one tick of the wheel
+	 * 
+	 * @author Lukas Dietrich
+	 *
+	 */
+	private class Bucket {
+		
+		private List<LifeTimeWrapper> entries = new ArrayList<>();
+		
+		private synchronized void add(LifeTimeWrapper wrapper) {
+			entries.add(wrapper);
+		}
+		
+		private synchronized List<LifeTimeWrapper> drain() {
+			List<LifeTimeWrapper> drained = entries;
+			entries = new ArrayList<>();
+			return drained;
+		}
+		
+	}
+	
+	/**
+	 * Associates a value with the time of its last access
 	 * 
 	 * @author Lukas Dietrich
 	 *
 	 */
 	private class LifeTimeWrapper {
 		
-		private long expires;
-		private E value;
+		private final String key;
+		private final E value;
+		private final long weight;
+		private volatile long accessed;
 		
-		private LifeTimeWrapper(E value) {
+		private LifeTimeWrapper(String key, E value, long weight, long accessed) {
+			this.key = key;
 			this.value = value;
-			updateExpire();
+			this.weight = weight;
+			this.accessed = accessed;
 		}
 		
-		/**
-		 * updates expiration date to {@link System#currentTimeMillis()} + {@link DefaultSessionStore#lifetime}
-		 */
-		private void updateExpire() {
-			this.expires = System.currentTimeMillis() + lifetime;
+		private long expires() {
+			return accessed + lifetime;
 		}
 		
 		/**
-		 * Returns the underlying value
+		 * Extends the expiration date to <code>now</code> + {@link DefaultSessionStore#lifetime}.
+		 * Accesses within the same tick of the wheel do not write, so
+		 * concurrent lookups of a session do not contend.
 		 * 
-		 * @return value of wrapper
+		 * @param now current time in milliseconds
 		 */
-		public E getValue() {
-			updateExpire();
-			return this.value;
+		private void touch(long now) {
+			if (now - accessed >= tick)
+				accessed = now;
 		}
 		
 	}
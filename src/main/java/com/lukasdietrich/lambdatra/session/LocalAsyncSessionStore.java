@@ -0,0 +1,108 @@
+package com.lukasdietrich.lambdatra.session;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process {@link AsyncSessionStore} standing in for a remote
+ * backend, e.g. in tests or during development. Operations complete
+ * on a separate thread after a configurable latency.
+ * <br>
+ * Expired sessions are removed when they are accessed.
+ * 
+ * @author Lukas Dietrich
+ *
+ * @param <E> class of session value
+ */
+public class LocalAsyncSessionStore<E> implements AsyncSessionStore<E> {
+	
+	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "lambdatra-local-sessions");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private ConcurrentHashMap<String, Entry<E>> values = new ConcurrentHashMap<>();
+	private long latency;
+	
+	/**
+	 * Delays every operation to simulate a round trip.
+	 * 
+	 * @param latency delay in milliseconds
+	 * @return this
+	 */
+	public LocalAsyncSessionStore<E> setLatency(long latency) {
+		this.latency = latency;
+		return this;
+	}
+
+	@Override
+	public CompletableFuture<Void> putSession(String id, E value, long lifetime) {
+		return complete(() -> {
+			values.put(id, new Entry<>(value, lifetime));
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> removeSession(String id) {
+		return complete(() -> {
+			values.remove(id);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Optional<E>> getSession(String id) {
+		return complete(() -> {
+			Entry<E> entry = values.get(id);
+			
+			if (entry == null)
+				return Optional.empty();
+			
+			long now = System.currentTimeMillis();
+			
+			if (entry.lifetime > 0 && entry.accessed + entry.lifetime < now) {
+				values.remove(id, entry);
+				return Optional.empty();
+			}
+			
+			entry.accessed = now;
+			return Optional.of(entry.value);
+		});
+	}
+	
+	private <T> CompletableFuture<T> complete(Supplier<T> operation) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		
+		EXECUTOR.schedule(() -> {
+			try {
+				future.complete(operation.get());
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+			}
+		}, latency, TimeUnit.MILLISECONDS);
+		
+		return future;
+	}
+	
+	private static class Entry<E> {
+		
+		private final E value;
+		private final long lifetime;
+		private volatile long accessed;
+		
+		private Entry(E value, long lifetime) {
+			this.value = value;
+			this.lifetime = lifetime;
+			this.accessed = System.currentTimeMillis();
+		}
+		
+	}
+
+}
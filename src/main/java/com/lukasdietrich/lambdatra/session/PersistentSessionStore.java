@@ -0,0 +1,436 @@
+package com.lukasdietrich.lambdatra.session;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * {@link SessionStore} that survives restarts.
+ * <br>
+ * Sessions are held and looked up in a {@link DefaultSessionStore}.
+ * Every started, saved and removed session is appended to a
+ * memory-mapped log by a background thread, which also forces the
+ * log to disk at most once a second, so callers never wait for disk.
+ * The log is compacted once it mostly consists of stale records, or
+ * when half a lifetime passed since the last compaction, which also
+ * persists recent access times. At startup the log is replayed and
+ * compacted right away.
+ * <br>
+ * Values are serialized when the session is started. Changes to a
+ * mutable value are only persisted by {@link #save(String)}, as
+ * compaction copies the last saved bytes instead of serializing
+ * values, that may be changed by handlers meanwhile. Serialization
+ * runs on the thread starting or saving the session, which is the
+ * event loop for handlers that do not run on an executor, so large
+ * values or slow serializers delay every connection of that loop.
+ * <br>
+ * The {@link DefaultSessionStore} may still be given its own
+ * {@link SessionListener}, which does not affect persistence.
+ * 
+ * @author Lukas Dietrich
+ *
+ * @param <E> class of session value
+ */
+public class PersistentSessionStore<E> implements SessionStore<E>, Closeable {
+	
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final Record CLOSE = new Record((byte) 0, null, 0, null);
+	
+	private static final int INITIAL_SIZE = 1 << 20;
+	private static final long FORCE_INTERVAL = 1000;
+
+	private DefaultSessionStore<E> memory;
+	private SessionSerializer<E> serializer;
+	private Path path;
+	private BlockingQueue<Record> queue;
+	private Thread writer;
+	private Thread hook;
+	private volatile boolean closed;
+	
+	// only accessed by the writer thread after construction
+	private FileChannel channel;
+	private MappedByteBuffer log;
+	private Map<String, Integer> live; // position of the last record of a session
+	private long liveBytes;
+	private long compacted;
+	
+	/**
+	 * Opens or creates a log and restores its sessions into memory.
+	 * 
+	 * @param memory store to hold sessions in memory
+	 * @param file log file
+	 * @param serializer converts session values from and to bytes
+	 * @throws IOException if the log cannot be opened
+	 */
+	public PersistentSessionStore(DefaultSessionStore<E> memory, File file, SessionSerializer<E> serializer) throws IOException {
+		this.memory = memory;
+		this.serializer = serializer;
+		this.path = file.toPath().toAbsolutePath();
+		this.queue = new LinkedBlockingQueue<>();
+		this.live = new HashMap<>();
+		
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.log = channel.map(MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, channel.size()));
+		
+		recover();
+		compact();
+		
+		memory.setPersistence((id, value, cause) -> {
+			if (!closed)
+				queue.offer(new Record(REMOVE, id, 0, null));
+		});
+		
+		this.writer = new Thread(this::run, "lambdatra-session-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+		
+		this.hook = new Thread(this::close);
+		Runtime.getRuntime().addShutdownHook(hook);
+	}
+	
+	@Override
+	public String getCookieKey() {
+		return memory.getCookieKey();
+	}
+
+	@Override
+	public String startSession(E value) {
+		String key = UUID.randomUUID().toString();
+		long now = System.currentTimeMillis();
+		
+		append(key, value, now);
+		memory.put(key, value, now);
+		
+		return key;
+	}
+
+	@Override
+	public void stopSession(String id) {
+		memory.stopSession(id);
+	}
+
+	@Override
+	public Optional<E> getSession(String id) {
+		return memory.getSession(id);
+	}
+	
+	/**
+	 * Persists the current value of a session after it was changed.
+	 * The value is serialized on the calling thread.
+	 * 
+	 * @param id session id
+	 */
+	public void save(String id) {
+		memory.getSession(id).ifPresent(value -> append(id, value, System.currentTimeMillis()));
+	}
+	
+	/**
+	 * Writes pending records and closes the log. Sessions are
+	 * still served from memory, but no longer persisted.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+		
+		closed = true;
+		queue.offer(CLOSE);
+		
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		try {
+			Runtime.getRuntime().removeShutdownHook(hook);
+		} catch (IllegalStateException e) {
+			// already shutting down
+		}
+	}
+	
+	private void append(String id, E value, long accessed) {
+		if (closed)
+			return;
+		
+		try {
+			queue.offer(new Record(PUT, id, accessed, serializer.serialize(value)));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void run() {
+		long forced = System.currentTimeMillis();
+		boolean dirty = false;
+		
+		while (true) {
+			try {
+				Record record = queue.poll(FORCE_INTERVAL, TimeUnit.MILLISECONDS);
+				
+				if (record == CLOSE)
+					break;
+				
+				if (record != null)
+					dirty |= write(record);
+				
+				long now = System.currentTimeMillis();
+				
+				if (dirty && (record == null || now - forced >= FORCE_INTERVAL)) {
+					log.force();
+					dirty = false;
+					forced = now;
+				}
+				
+				long lifetime = memory.getLifetime();
+				
+				if ((log.position() > INITIAL_SIZE && log.position() > 2 * liveBytes)
+						|| (lifetime > 0 && now - compacted > Math.max(FORCE_INTERVAL, lifetime / 2)))
+					compact();
+			} catch (InterruptedException e) {
+				break;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		try {
+			log.force();
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Replays the log into memory. Replay stops at the first
+	 * incomplete or corrupt record, which is what a crash during
+	 * a write leaves behind.
+	 */
+	private void recover() {
+		Map<String, Record> records = new HashMap<>();
+		Map<String, Integer> positions = new HashMap<>();
+		CRC32 crc = new CRC32();
+		
+		while (log.remaining() >= 4) {
+			int position = log.position();
+			int size = log.getInt();
+			
+			if (size < 15 || size > log.remaining())
+				break;
+			
+			byte[] body = new byte[size - 4];
+			log.get(body);
+			
+			crc.reset();
+			crc.update(body);
+			
+			if ((int) crc.getValue() != log.getInt())
+				break;
+			
+			Record record = Record.parse(body);
+			
+			if (record.type == PUT) {
+				records.put(record.id, record);
+				positions.put(record.id, position);
+			} else {
+				records.remove(record.id);
+			}
+		}
+		
+		long now = System.currentTimeMillis();
+		long lifetime = memory.getLifetime();
+		
+		for (Record record : records.values()) {
+			if (lifetime > 0 && record.accessed + lifetime < now)
+				continue;
+			
+			try {
+				memory.put(record.id, serializer.deserialize(record.value), record.accessed);
+				live.put(record.id, positions.get(record.id));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Rewrites the last records of the sessions in memory with their
+	 * current access time into a new file, which then atomically
+	 * replaces the old one. Sessions whose record is still queued
+	 * are written once it is taken from the queue.
+	 * 
+	 * @throws IOException if the new log cannot be written
+	 */
+	private void compact() throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".compact");
+		FileChannel oldChannel = channel;
+		MappedByteBuffer oldLog = log;
+		Map<String, Integer> positions = live;
+		
+		this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, 
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.log = channel.map(MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, Math.min(Integer.MAX_VALUE, 2 * liveBytes)));
+		this.live = new HashMap<>();
+		this.liveBytes = 0;
+		
+		memory.forEach((id, value, accessed) -> {
+			Integer position = positions.get(id);
+			
+			if (position == null)
+				return;
+			
+			Record record = read(oldLog, position);
+			
+			try {
+				write(new Record(PUT, id, accessed, record.value));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		
+		log.force();
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		oldChannel.close();
+		
+		this.compacted = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Appends a record to the log, growing the mapping if needed.
+	 * Removals of sessions that are not in the log are skipped.
+	 * 
+	 * @param record record to append
+	 * @return whether the log was changed
+	 * @throws IOException if the mapping cannot be grown
+	 */
+	private boolean write(Record record) throws IOException {
+		if (record.type == REMOVE) {
+			Integer position = live.remove(record.id);
+			
+			if (position == null)
+				return false;
+			
+			liveBytes -= 4 + log.getInt(position);
+		}
+		
+		byte[] body = record.toBytes();
+		int size = 4 + body.length + 4;
+		
+		if (log.remaining() < size + 4) {
+			int position = log.position();
+			long capacity = Math.max(2L * log.capacity(), position + size + 4);
+			
+			if (capacity > Integer.MAX_VALUE)
+				throw new IOException("session log exceeds 2 GiB");
+			
+			log.force();
+			log = channel.map(MapMode.READ_WRITE, 0, capacity);
+			log.position(position);
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		
+		int position = log.position();
+		log.putInt(body.length + 4);
+		log.put(body);
+		log.putInt((int) crc.getValue());
+		
+		if (record.type == PUT) {
+			Integer previous = live.put(record.id, position);
+			liveBytes += size - (previous == null ? 0 : 4 + log.getInt(previous));
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Reads a record, that has been written before.
+	 * 
+	 * @param log log to read from
+	 * @param position position of the record
+	 * @return the record
+	 */
+	private static Record read(MappedByteBuffer log, int position) {
+		ByteBuffer buffer = log.duplicate();
+		byte[] body = new byte[buffer.getInt(position) - 4];
+		
+		buffer.position(position + 4);
+		buffer.get(body);
+		
+		return Record.parse(body);
+	}
+	
+	/**
+	 * Entry of the log
+	 * <br>
+	 * <code>length:int type:byte accessed:long idLength:short id value crc:int</code>
+	 * 
+	 * @author Lukas Dietrich
+	 *
+	 */
+	private static class Record {
+		
+		private final byte type;
+		private final String id;
+		private final long accessed;
+		private final byte[] value;
+		
+		private Record(byte type, String id, long accessed, byte[] value) {
+			this.type = type;
+			this.id = id;
+			this.accessed = accessed;
+			this.value = value;
+		}
+		
+		private byte[] toBytes() {
+			byte[] key = id.getBytes(StandardCharsets.UTF_8);
+			int length = value == null ? 0 : value.length;
+			
+			ByteBuffer body = ByteBuffer.allocate(1 + 8 + 2 + key.length + length)
+					.put(type)
+					.putLong(accessed)
+					.putShort((short) key.length)
+					.put(key);
+			
+			if (value != null)
+				body.put(value);
+			
+			return body.array();
+		}
+		
+		private static Record parse(byte[] bytes) {
+			ByteBuffer body = ByteBuffer.wrap(bytes);
+			
+			byte type = body.get();
+			long accessed = body.getLong();
+			byte[] key = new byte[body.getShort()];
+			body.get(key);
+			byte[] value = new byte[body.remaining()];
+			body.get(value);
+			
+			return new Record(type, new String(key, StandardCharsets.UTF_8), accessed, value);
+		}
+		
+	}
+
+}
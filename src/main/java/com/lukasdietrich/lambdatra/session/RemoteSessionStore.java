@@ -0,0 +1,249 @@
+package com.lukasdietrich.lambdatra.session;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link SessionStore} backed by an {@link AsyncSessionStore}.
+ * <br>
+ * Sessions are fetched ahead of requests through {@link #prefetch(String)},
+ * while further requests are queued, so handlers find them in a
+ * near-cache of recently used sessions and the event loop never waits
+ * for the backend. Sessions older than the near-cache duration are
+ * still served and refreshed in the background, so a prefetched
+ * session is available for the whole request. Sessions missing from
+ * the near-cache, e.g. in streamed requests, are only waited for off
+ * the event loop. On the event loop they are fetched in the background
+ * and missing for the current request.
+ * <br>
+ * Once the near-cache is full, the oldest of a few sampled sessions
+ * is dropped for each cached one. Stopped sessions are cached as
+ * missing, so fetches still in flight can not bring them back.
+ * Cached sessions may be stale for the duration of the near-cache,
+ * if they are changed or stopped by another server meanwhile.
+ * 
+ * @author Lukas Dietrich
+ *
+ * @param <E> class of session value
+ */
+public class RemoteSessionStore<E> implements SessionStore<E> {
+	
+	/**
+	 * Default number of sessions kept in the near-cache
+	 */
+	public static final int DEFAULT_NEAR_SIZE = 10_000;
+	
+	/**
+	 * Default time in milliseconds sessions are kept in the near-cache
+	 */
+	public static final long DEFAULT_NEAR_TTL = 1000;
+	
+	private static final int SAMPLES = 8;
+
+	private String cookieKey;
+	private long lifetime;
+	private AsyncSessionStore<E> backend;
+	
+	private ConcurrentHashMap<String, Near<E>> near;
+	private ConcurrentHashMap<String, CompletableFuture<Optional<E>>> pending;
+	private AtomicLong versions;
+	private Iterator<Map.Entry<String, Near<E>>> hand;
+	private int nearSize = DEFAULT_NEAR_SIZE;
+	private long nearTtl = DEFAULT_NEAR_TTL;
+	
+	/**
+	 * @param cookieKey name of the cookie
+	 * @param lifetime lifetime of sessions in milliseconds
+	 * @param backend store holding the sessions
+	 */
+	public RemoteSessionStore(String cookieKey, long lifetime, AsyncSessionStore<E> backend) {
+		this.cookieKey = cookieKey;
+		this.lifetime = lifetime;
+		this.backend = backend;
+		this.near = new ConcurrentHashMap<>();
+		this.pending = new ConcurrentHashMap<>();
+		this.versions = new AtomicLong();
+	}
+	
+	/**
+	 * Configures the near-cache. Missing sessions are cached as well,
+	 * so unknown ids do not cause a round trip each time.
+	 * 
+	 * @param size maximum number of cached sessions
+	 * @param ttl time in milliseconds a session is cached
+	 * @return this
+	 */
+	public RemoteSessionStore<E> setNearCache(int size, long ttl) {
+		this.nearSize = size;
+		this.nearTtl = ttl;
+		return this;
+	}
+	
+	@Override
+	public String getCookieKey() {
+		return this.cookieKey;
+	}
+
+	@Override
+	public String startSession(E value) {
+		String key = UUID.randomUUID().toString();
+		
+		cache(key, Optional.of(value), versions.incrementAndGet());
+		backend.putSession(key, value, lifetime).exceptionally(RemoteSessionStore::log);
+		
+		return key;
+	}
+
+	@Override
+	public void stopSession(String id) {
+		pending.remove(id);
+		cache(id, Optional.empty(), versions.incrementAndGet());
+		backend.removeSession(id).exceptionally(RemoteSessionStore::log);
+	}
+
+	@Override
+	public Optional<E> getSession(String id) {
+		return getSession(id, true);
+	}
+	
+	@Override
+	public Optional<E> getSession(String id, boolean wait) {
+		Near<E> cached = near.get(id);
+		
+		if (cached != null) {
+			if (!cached.isFresh(nearTtl)) {
+				fetch(id).whenComplete((value, e) -> {
+					if (e != null)
+						log(e);
+				});
+			}
+			
+			return cached.value;
+		}
+		
+		CompletableFuture<Optional<E>> future = fetch(id);
+		
+		if (wait || future.isDone())
+			return future.join();
+		
+		return Optional.empty();
+	}
+	
+	@Override
+	public CompletableFuture<?> prefetch(String id) {
+		Near<E> cached = near.get(id);
+		
+		if (cached != null && cached.isFresh(nearTtl))
+			return null;
+		
+		return fetch(id);
+	}
+	
+	/**
+	 * Fetches a session from the backend. Concurrent fetches
+	 * of the same session share a single round trip. The result
+	 * is only cached, if the session has not been stopped meanwhile.
+	 * 
+	 * @param id session id
+	 * @return future of the session
+	 */
+	private CompletableFuture<Optional<E>> fetch(String id) {
+		CompletableFuture<Optional<E>> future = pending.get(id);
+		
+		if (future != null)
+			return future;
+		
+		CompletableFuture<Optional<E>> created = new CompletableFuture<>();
+		future = pending.putIfAbsent(id, created);
+		
+		if (future != null)
+			return future;
+		
+		long version = versions.incrementAndGet();
+		
+		backend.getSession(id).whenComplete((value, e) -> {
+			if (pending.remove(id, created) && value != null)
+				cache(id, value, version);
+			
+			if (e != null) {
+				created.completeExceptionally(e);
+			} else {
+				created.complete(value);
+			}
+		});
+		
+		return created;
+	}
+	
+	/**
+	 * Caches a session, unless a more recent version is cached already.
+	 * 
+	 * @param id session id
+	 * @param value session or empty, if it does not exist
+	 * @param version increasing number of the change or fetch
+	 */
+	private void cache(String id, Optional<E> value, long version) {
+		near.compute(id, (key, cached) -> cached != null && cached.version > version 
+				? cached 
+				: new Near<>(value, version));
+		
+		if (near.mappingCount() > nearSize)
+			evict();
+	}
+	
+	/**
+	 * Drops the oldest of a few sampled sessions until the near-cache
+	 * is within its size. Only caching sessions in a full near-cache
+	 * synchronizes here.
+	 */
+	private synchronized void evict() {
+		while (near.mappingCount() > nearSize) {
+			Map.Entry<String, Near<E>> victim = null;
+			
+			for (int i = 0; i < SAMPLES; i++) {
+				if (hand == null || !hand.hasNext()) {
+					hand = near.entrySet().iterator();
+					
+					if (!hand.hasNext())
+						return;
+				}
+				
+				Map.Entry<String, Near<E>> candidate = hand.next();
+				
+				if (victim == null || candidate.getValue().fetched < victim.getValue().fetched)
+					victim = candidate;
+			}
+			
+			near.remove(victim.getKey(), victim.getValue());
+		}
+	}
+	
+	private static Void log(Throwable e) {
+		e.printStackTrace();
+		return null;
+	}
+	
+	private static class Near<E> {
+		
+		private final Optional<E> value;
+		private final long version;
+		private final long fetched;
+		
+		private Near(Optional<E> value, long version) {
+			this.value = value;
+			this.version = version;
+			this.fetched = System.currentTimeMillis();
+		}
+		
+		private boolean isFresh(long ttl) {
+			return System.currentTimeMillis() - fetched < ttl;
+		}
+		
+	}
+
+}
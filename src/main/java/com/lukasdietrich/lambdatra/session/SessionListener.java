@@ -0,0 +1,34 @@
+package com.lukasdietrich.lambdatra.session;
+
+/**
+ * Listener for sessions leaving a {@link SessionStore}
+ * 
+ * @author Lukas Dietrich
+ *
+ * @param <E> class of session value
+ */
+@FunctionalInterface
+public interface SessionListener<E> {
+	
+	/**
+	 * Reason for a session to be removed
+	 */
+	public enum Cause {
+		/** the session was stopped explicitly */
+		STOPPED,
+		/** the session was not accessed within its lifetime */
+		EXPIRED,
+		/** the session was removed to keep the store within its bounds */
+		EVICTED
+	}
+
+	/**
+	 * Called after a session has been removed.
+	 * 
+	 * @param id session id
+	 * @param value value of session
+	 * @param cause reason of removal
+	 */
+	public void removed(String id, E value, Cause cause);
+	
+}
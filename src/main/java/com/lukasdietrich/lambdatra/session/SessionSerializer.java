@@ -0,0 +1,69 @@
+package com.lukasdietrich.lambdatra.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Converts session values from and to bytes
+ * 
+ * @author Lukas Dietrich
+ *
+ * @param <E> class of session value
+ */
+public interface SessionSerializer<E> {
+
+	/**
+	 * Converts a session value to bytes.
+	 * 
+	 * @param value session value
+	 * @return bytes of value
+	 * @throws IOException if the value cannot be serialized
+	 */
+	public byte[] serialize(E value) throws IOException;
+	
+	/**
+	 * Converts bytes back to a session value.
+	 * 
+	 * @param bytes bytes of value
+	 * @return session value
+	 * @throws IOException if the bytes cannot be deserialized
+	 */
+	public E deserialize(byte[] bytes) throws IOException;
+	
+	/**
+	 * Returns a {@link SessionSerializer} using java serialization.
+	 * 
+	 * @return serializer for {@link Serializable} values
+	 */
+	public static <E extends Serializable> SessionSerializer<E> serializable() {
+		return new SessionSerializer<E>() {
+			
+			@Override
+			public byte[] serialize(E value) throws IOException {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				
+				try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+					out.writeObject(value);
+				}
+				
+				return bytes.toByteArray();
+			}
+			
+			@Override
+			@SuppressWarnings("unchecked")
+			public E deserialize(byte[] bytes) throws IOException {
+				try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+					return (E) in.readObject();
+				} catch (ClassNotFoundException e) {
+					throw new IOException(e);
+				}
+			}
+			
+		};
+	}
+	
+}
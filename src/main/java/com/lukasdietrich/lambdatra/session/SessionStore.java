@@ -1,6 +1,7 @@
 package com.lukasdietrich.lambdatra.session;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Arbitrary {@link SessionStore} to hold any implemented data structure.
@@ -43,4 +44,31 @@ public interface SessionStore<E> {
 	 */
 	public Optional<E> getSession(String id);
 	
+	/**
+	 * Returns an {@link Optional} of a session value like {@link #getSession(String)}.
+	 * Stores loading sessions from elsewhere must not wait for a session, 
+	 * unless told so, but may return an empty {@link Optional} instead, 
+	 * e.g. when called on an event loop.
+	 * 
+	 * @param id session id
+	 * @param wait whether or not the caller may wait for the session
+	 * @return {@link Optional} of session
+	 */
+	public default Optional<E> getSession(String id, boolean wait) {
+		return getSession(id);
+	}
+	
+	/**
+	 * Starts loading a session before the request is handled, so
+	 * {@link #getSession(String)} does not have to wait for it.
+	 * Stores holding their sessions in memory have nothing to do.
+	 * 
+	 * @param id session id
+	 * @return future completed once the session is available,
+	 * 			or null if it is available already
+	 */
+	public default CompletableFuture<?> prefetch(String id) {
+		return null;
+	}
+	
 }
@@ -4,6 +4,12 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import com.lukasdietrich.lambdatra.reaction.http.CachedHttpAdapterTest;
+import com.lukasdietrich.lambdatra.reaction.http.ResponseCacheTest;
+import com.lukasdietrich.lambdatra.reaction.http.StaticCacheTest;
+import com.lukasdietrich.lambdatra.reaction.http.StaticFileTest;
+import com.lukasdietrich.lambdatra.session.DefaultSessionStoreTest;
+
 public class AppTest extends TestCase {
 
 	public AppTest(String testName) {
@@ -12,7 +18,16 @@ public class AppTest extends TestCase {
 
 	public static Test suite() {
 		return new TestSuite(
-				RoutePatternTest.class
+				RoutePatternTest.class,
+				RouterTest.class,
+				CompressionPolicyTest.class,
+				SessionStoreTest.class,
+				DefaultSessionStoreTest.class,
+				CoalescingHttpAdapterTest.class,
+				ResponseCacheTest.class,
+				CachedHttpAdapterTest.class,
+				StaticFileTest.class,
+				StaticCacheTest.class
 		);
 	}
 	
@@ -0,0 +1,147 @@
+package com.lukasdietrich.lambdatra;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.cookie.DefaultCookie;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import junit.framework.TestCase;
+
+import com.lukasdietrich.lambdatra.reaction.http.AsyncHttpCallback;
+import com.lukasdietrich.lambdatra.reaction.http.CoalescingHttpAdapter;
+import com.lukasdietrich.lambdatra.routing.Route;
+import com.lukasdietrich.lambdatra.routing.Router;
+
+public class CoalescingHttpAdapterTest extends TestCase {
+	
+	private List<CompletableFuture<Object>> calls;
+	private List<HttpContent> bodies;
+	
+	@Override
+	protected void setUp() {
+		calls = new ArrayList<>();
+		bodies = new ArrayList<>();
+	}
+	
+	private Router router(AsyncHttpCallback<Object> cb) {
+		Router router = new Router();
+		router.addRoute(new Route("/*", new CoalescingHttpAdapter<>(cb, null, CoalescingHttpAdapter::uri)));
+		return router;
+	}
+	
+	private AsyncHttpCallback<Object> pending(boolean cookie) {
+		return (req, res) -> {
+			CompletableFuture<Object> future = new CompletableFuture<>();
+			calls.add(future);
+			
+			return future.thenRun(() -> {
+				if (cookie)
+					res.setCookie(new DefaultCookie("a", "b"));
+				
+				res.write("body " + req.getPath());
+			});
+		};
+	}
+	
+	private static EmbeddedChannel request(Router router, HttpMethod method, String uri) {
+		EmbeddedChannel channel = new EmbeddedChannel(new NettyHandler(router, new ServerConfig(), null));
+		channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, method, uri));
+		return channel;
+	}
+	
+	/**
+	 * Runs the tasks of the channel and reads its response.
+	 * Bodies are kept to be checked and released by the test.
+	 */
+	private String response(EmbeddedChannel channel) {
+		channel.runPendingTasks();
+		
+		StringBuilder response = new StringBuilder();
+		Object msg;
+		
+		while ((msg = channel.readOutbound()) != null) {
+			if (msg instanceof HttpResponse)
+				response.append(((HttpResponse) msg).getStatus().code());
+			
+			if (msg instanceof HttpContent && ((HttpContent) msg).content().isReadable()) {
+				response.append(' ').append(((HttpContent) msg).content().toString(CharsetUtil.UTF_8));
+				bodies.add((HttpContent) msg);
+			} else {
+				ReferenceCountUtil.release(msg);
+			}
+		}
+		
+		return response.toString();
+	}
+	
+	public void testFollowers() {
+		Router router = router(pending(false));
+		
+		EmbeddedChannel leader = request(router, HttpMethod.GET, "/a");
+		EmbeddedChannel first = request(router, HttpMethod.GET, "/a");
+		EmbeddedChannel second = request(router, HttpMethod.GET, "/a");
+		EmbeddedChannel other = request(router, HttpMethod.GET, "/b");
+		EmbeddedChannel post = request(router, HttpMethod.POST, "/a");
+		
+		assertEquals(3, calls.size());
+		calls.forEach(call -> call.complete(null));
+		
+		assertEquals("200 body /a", response(leader));
+		assertEquals("200 body /a", response(first));
+		assertEquals("200 body /a", response(second));
+		assertEquals("200 body /b", response(other));
+		assertEquals("200 body /a", response(post));
+		
+		// both followers share one body, which is released with their responses
+		HttpContent shared = bodies.get(1);
+		assertEquals(2, shared.refCnt());
+		
+		bodies.forEach(ReferenceCountUtil::release);
+		assertEquals(0, shared.refCnt());
+		
+		request(router, HttpMethod.GET, "/a");
+		assertEquals(4, calls.size());
+	}
+	
+	public void testUnshareable() {
+		Router router = router(pending(true));
+		
+		EmbeddedChannel leader = request(router, HttpMethod.GET, "/a");
+		EmbeddedChannel follower = request(router, HttpMethod.GET, "/a");
+		
+		assertEquals(1, calls.size());
+		calls.get(0).complete(null);
+		
+		assertEquals("200 body /a", response(leader));
+		assertEquals("", response(follower));
+		assertEquals(2, calls.size());
+		
+		calls.get(1).complete(null);
+		assertEquals("200 body /a", response(follower));
+		bodies.forEach(ReferenceCountUtil::release);
+	}
+	
+	public void testFailure() {
+		Router router = router(pending(false));
+		
+		EmbeddedChannel leader = request(router, HttpMethod.GET, "/a");
+		EmbeddedChannel follower = request(router, HttpMethod.GET, "/a");
+		
+		calls.get(0).completeExceptionally(new IllegalStateException("expected"));
+		
+		assertTrue(response(leader).startsWith("500"));
+		assertTrue(response(follower).startsWith("500"));
+		assertEquals(1, calls.size());
+		bodies.forEach(ReferenceCountUtil::release);
+	}
+
+}
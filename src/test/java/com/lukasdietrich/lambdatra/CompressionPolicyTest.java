@@ -0,0 +1,108 @@
+package com.lukasdietrich.lambdatra;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class CompressionPolicyTest extends TestCase {
+	
+	public void testDefaults() {
+		CompressionPolicy policy = new CompressionPolicy();
+		
+		assertTrue(policy.shouldCompress("text/html; charset=utf-8", 4096));
+		assertTrue(policy.shouldCompress("application/json", -1));
+		assertTrue(policy.shouldCompress("application/ld+json", 4096));
+		assertFalse(policy.shouldCompress("application/json", 40));
+		assertFalse(policy.shouldCompress("image/png", 4096));
+		assertFalse(policy.shouldCompress("text/event-stream", -1));
+		assertFalse(policy.shouldCompress(null, 4096));
+	}
+	
+	public void testLists() {
+		CompressionPolicy policy = new CompressionPolicy()
+				.setAllowed("*")
+				.setDenied("image/*", "application/zip")
+				.setMinSize(0);
+		
+		assertTrue(policy.shouldCompress("application/octet-stream", 1));
+		assertFalse(policy.shouldCompress("IMAGE/JPEG", 1));
+		assertFalse(policy.shouldCompress("application/zip", 1));
+		assertFalse(policy.setEnabled(false).shouldCompress("text/plain", 1));
+	}
+	
+	public void testLevel() {
+		assertEquals(9, new CompressionPolicy().setLevel(9).getLevel());
+		
+		try {
+			new CompressionPolicy().setLevel(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		
+		try {
+			new CompressionPolicy().setLevel(10);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		
+		try {
+			new CompressionPolicy().setMinSize(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+	
+	private static List<String> vary(String... vary) {
+		EmbeddedChannel channel = new EmbeddedChannel(new CompressionHandler(new CompressionPolicy()));
+		
+		DefaultFullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+		req.headers().set(Names.ACCEPT_ENCODING, "gzip");
+		channel.writeInbound(req);
+		
+		FullHttpResponse res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, 
+				Unpooled.wrappedBuffer(new byte[4096]));
+		res.headers().set(Names.CONTENT_TYPE, "text/plain");
+		HttpHeaders.setContentLength(res, 4096);
+		
+		for (String value : vary)
+			res.headers().add(Names.VARY, value);
+		
+		channel.writeOutbound(res);
+		
+		HttpResponse head = (HttpResponse) channel.readOutbound();
+		assertEquals("gzip", head.headers().get(Names.CONTENT_ENCODING));
+		
+		Object msg;
+		
+		while ((msg = channel.readOutbound()) != null)
+			ReferenceCountUtil.release(msg);
+		
+		channel.finish();
+		ReferenceCountUtil.release(channel.readInbound());
+		
+		return head.headers().getAll(Names.VARY);
+	}
+	
+	public void testVary() {
+		assertEquals(1, vary().size());
+		assertEquals(Names.ACCEPT_ENCODING, vary().get(0));
+		assertEquals(2, vary("Origin").size());
+		assertEquals(Names.ACCEPT_ENCODING, vary("Origin").get(1));
+		assertEquals(1, vary("Origin, accept-encoding").size());
+		assertEquals(1, vary("*").size());
+	}
+	
+}
@@ -0,0 +1,100 @@
+package com.lukasdietrich.lambdatra;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.routing.PathParams;
+import com.lukasdietrich.lambdatra.routing.Route;
+import com.lukasdietrich.lambdatra.routing.RouteMatches;
+import com.lukasdietrich.lambdatra.routing.RoutePattern;
+import com.lukasdietrich.lambdatra.routing.Router;
+
+/**
+ * Compares the {@link Router} against a linear scan over
+ * {@link RoutePattern}s for 10, 100 and 1000 routes.
+ * <br>
+ * Not part of the test suite, run it manually:
+ * <code>java -cp target/classes:target/test-classes:... com.lukasdietrich.lambdatra.RouterBenchmark</code>
+ * 
+ * @author Lukas Dietrich
+ *
+ */
+public class RouterBenchmark {
+	
+	private static final int ITERATIONS = 20_000;
+	
+	private static final Adapter NOOP = new Adapter() {
+		
+		@Override
+		public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) {
+			return false;
+		}
+		
+	};
+	
+	private static volatile Object sink;
+	
+	public static void main(String... args) {
+		run(false);
+		run(true);
+	}
+	
+	private static void run(boolean print) {
+		for (int routes : new int[] { 10, 100, 1000 }) {
+			List<RoutePattern> patterns = new ArrayList<>();
+			Router router = new Router();
+			RouteMatches matches = new RouteMatches();
+			String[] paths = new String[routes];
+			
+			for (int i = 0; i < routes; i++) {
+				String pattern = String.format("/api/v1/resource%d/:id/items", i);
+				
+				patterns.add(new RoutePattern(pattern));
+				router.addRoute(new Route(pattern, NOOP));
+				paths[i] = String.format("/api/v1/resource%d/%d/items", i, i * 7);
+			}
+			
+			for (int round = 0; round < 3; round++) {
+				long linear = time(paths, path -> {
+					for (RoutePattern p : patterns)
+						p.match(path).ifPresent(m -> sink = m.get("id"));
+				});
+				
+				long tree = time(paths, path -> {
+					router.match(path, matches);
+					
+					for (int i = 0; i < matches.size(); i++)
+						sink = matches.getParams(i).getValue(0);
+				});
+				
+				if (print && round == 2) {
+					System.out.printf("%5d routes: RoutePattern %8.1f ns/op, Router %8.1f ns/op%n",
+							routes, linear / (double) ITERATIONS, tree / (double) ITERATIONS);
+				}
+			}
+		}
+	}
+	
+	private static long time(String[] paths, Lookup lookup) {
+		int iterations = Math.max(1, ITERATIONS / paths.length);
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < iterations; i++)
+			for (String path : paths)
+				lookup.find(path);
+		
+		return (System.nanoTime() - start) * ITERATIONS / ((long) iterations * paths.length);
+	}
+	
+	@FunctionalInterface
+	private interface Lookup {
+		
+		void find(String path);
+		
+	}
+	
+}
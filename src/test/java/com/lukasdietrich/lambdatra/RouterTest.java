@@ -0,0 +1,106 @@
+package com.lukasdietrich.lambdatra;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.lukasdietrich.lambdatra.reaction.Adapter;
+import com.lukasdietrich.lambdatra.routing.PathParams;
+import com.lukasdietrich.lambdatra.routing.Route;
+import com.lukasdietrich.lambdatra.routing.RouteMatches;
+import com.lukasdietrich.lambdatra.routing.Router;
+
+public class RouterTest extends TestCase {
+
+	private static final Adapter NOOP = new Adapter() {
+		
+		@Override
+		public boolean call(NettyHandler handler, ChannelHandlerContext ctx, FullHttpRequest req, PathParams params) {
+			return false;
+		}
+		
+	};
+	
+	private static List<String> find(Router router, String path) {
+		RouteMatches matches = new RouteMatches();
+		router.match(path, matches);
+		
+		List<String> list = new ArrayList<>();
+		
+		for (int i = 0; i < matches.size(); i++)
+			list.add(matches.getRoute(i).getPattern());
+		
+		return list;
+	}
+	
+	private static Router router(String... patterns) {
+		Router router = new Router();
+		
+		for (String pattern : patterns)
+			router.addRoute(new Route(pattern, NOOP));
+		
+		return router;
+	}
+	
+	public void testStatic() {
+		Router router = router("", "/", "/foo/bar");
+		
+		assertEquals("", find(router, "").get(0));
+		assertEquals("/", find(router, "/").get(0));
+		assertEquals(1, find(router, "/foo/bar").size());
+		assertTrue(find(router, "/foo").isEmpty());
+		assertTrue(find(router, "/foo/bar/baz").isEmpty());
+	}
+	
+	public void testParameters() {
+		RouteMatches matches = new RouteMatches();
+		router("/foo/:param/bar/:other", "/foo/:id/*").match("/foo/foobar/bar/42", matches);
+		
+		assertEquals(2, matches.size());
+		
+		PathParams params = matches.getParams(0);
+		assertEquals("foobar", params.get("param"));
+		assertEquals("42", params.get("other"));
+		assertNull(params.get("id"));
+		
+		params = matches.getParams(1);
+		assertEquals("foobar", params.get("id"));
+		assertEquals(1, params.size());
+		
+		assertTrue(find(router("/foo/:param"), "/foo/").isEmpty());
+	}
+	
+	public void testInvalidParameters() {
+		for (String pattern : new String[] { "/files/:name.json", "/a:b", "/:", "/:na-me" }) {
+			try {
+				router(pattern);
+				fail(pattern);
+			} catch (IllegalArgumentException e) {
+				// parameters must span a whole segment
+			}
+		}
+	}
+	
+	public void testWildcard() {
+		Router router = router("/static/*");
+		
+		assertEquals(1, find(router, "/static").size());
+		assertEquals(1, find(router, "/static/a/b.js").size());
+		assertTrue(find(router, "/staticx").isEmpty());
+		assertEquals(1, find(router("/*"), "/any/path").size());
+	}
+	
+	public void testRegistrationOrder() {
+		List<String> m = find(router("/foo/:id", "/*", "/foo/bar"), "/foo/bar");
+		
+		assertEquals(3, m.size());
+		assertEquals("/foo/:id", m.get(0));
+		assertEquals("/*", m.get(1));
+		assertEquals("/foo/bar", m.get(2));
+	}
+	
+}
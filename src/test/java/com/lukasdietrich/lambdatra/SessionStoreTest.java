@@ -0,0 +1,236 @@
+package com.lukasdietrich.lambdatra;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import com.lukasdietrich.lambdatra.session.AsyncSessionStore;
+import com.lukasdietrich.lambdatra.session.CookieSessionStore;
+import com.lukasdietrich.lambdatra.session.DefaultSessionStore;
+import com.lukasdietrich.lambdatra.session.LocalAsyncSessionStore;
+import com.lukasdietrich.lambdatra.session.PersistentSessionStore;
+import com.lukasdietrich.lambdatra.session.RemoteSessionStore;
+import com.lukasdietrich.lambdatra.session.SessionSerializer;
+import com.lukasdietrich.lambdatra.session.SessionListener.Cause;
+
+import junit.framework.TestCase;
+
+public class SessionStoreTest extends TestCase {
+	
+	public void testMaxSessions() {
+		List<Cause> causes = new ArrayList<>();
+		DefaultSessionStore<String> store = new DefaultSessionStore<String>("s", 0)
+				.setMaxSessions(10)
+				.setListener((id, value, cause) -> causes.add(cause));
+		
+		for (int i = 0; i < 100; i++)
+			store.startSession("value" + i);
+		
+		assertEquals(10, store.getSize());
+		assertEquals(90, store.getEvictedCount());
+		assertEquals(90, causes.size());
+	}
+	
+	public void testMaxMemory() {
+		DefaultSessionStore<String> store = new DefaultSessionStore<String>("s", 0)
+				.setMaxMemory(10 * DefaultSessionStore.ENTRY_OVERHEAD, String::length);
+		
+		for (int i = 0; i < 100; i++)
+			store.startSession("value");
+		
+		assertTrue(store.getMemory() <= 10 * DefaultSessionStore.ENTRY_OVERHEAD);
+		assertEquals(9, store.getSize());
+		
+		String id = store.startSession("value");
+		assertTrue(store.getSession(id).isPresent());
+		
+		store.stopSession(id);
+		assertFalse(store.getSession(id).isPresent());
+		assertEquals(8 * (DefaultSessionStore.ENTRY_OVERHEAD + 5), store.getMemory());
+	}
+	
+	public void testPersistence() throws IOException {
+		File file = File.createTempFile("sessions", ".log");
+		file.deleteOnExit();
+		
+		DefaultSessionStore<String> memory = new DefaultSessionStore<>("s", 60_000);
+		PersistentSessionStore<String> store = new PersistentSessionStore<>(memory, file, SessionSerializer.serializable());
+		
+		List<Cause> causes = new ArrayList<>();
+		memory.setListener((id, value, cause) -> causes.add(cause));
+		
+		String kept = store.startSession("kept");
+		String stopped = store.startSession("stopped");
+		store.stopSession(stopped);
+		store.close();
+		
+		assertEquals(Arrays.asList(Cause.STOPPED), causes);
+		
+		store = new PersistentSessionStore<>(
+				new DefaultSessionStore<>("s", 60_000), file, SessionSerializer.serializable());
+		
+		assertEquals("kept", store.getSession(kept).get());
+		assertFalse(store.getSession(stopped).isPresent());
+		store.close();
+	}
+	
+	public void testPersistenceOfSavedValues() throws IOException {
+		File file = File.createTempFile("sessions", ".log");
+		file.deleteOnExit();
+		
+		PersistentSessionStore<ArrayList<String>> store = new PersistentSessionStore<>(
+				new DefaultSessionStore<>("s", 60_000), file, SessionSerializer.serializable());
+		
+		String id = store.startSession(new ArrayList<>());
+		store.getSession(id).get().add("saved");
+		store.save(id);
+		store.getSession(id).get().add("unsaved");
+		store.close();
+		
+		// the first reopen compacts, the second one reads the compacted log
+		for (int i = 0; i < 2; i++) {
+			store = new PersistentSessionStore<>(
+					new DefaultSessionStore<>("s", 60_000), file, SessionSerializer.serializable());
+			
+			assertEquals(Arrays.asList("saved"), store.getSession(id).get());
+			store.close();
+		}
+		
+		String late = store.startSession(new ArrayList<>());
+		assertTrue(store.getSession(late).isPresent());
+	}
+	
+	public void testCookies() {
+		byte[] old = new byte[32];
+		byte[] current = new byte[32];
+		current[0] = 1;
+		
+		CookieSessionStore<String> previous = new CookieSessionStore<>("s", 60_000, SessionSerializer.serializable(), old);
+		CookieSessionStore<String> store = new CookieSessionStore<String>("s", 60_000, SessionSerializer.serializable(), current, old)
+				.setEncrypted(true);
+		
+		String id = store.startSession("value");
+		assertEquals("value", store.getSession(id).get());
+		assertFalse(id.contains("value"));
+		assertFalse(previous.getSession(id).isPresent());
+		
+		String rotated = previous.startSession("rotated");
+		assertEquals("rotated", store.getSession(rotated).get());
+		
+		char[] tampered = id.toCharArray();
+		tampered[10] = tampered[10] == 'A' ? 'B' : 'A';
+		assertFalse(store.getSession(new String(tampered)).isPresent());
+		assertFalse(store.getSession("garbage!").isPresent());
+		
+		try {
+			store.setMaxSize(64).startSession(new String(new char[100]));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// too large
+		}
+	}
+	
+	public void testRemote() {
+		LocalAsyncSessionStore<String> backend = new LocalAsyncSessionStore<String>().setLatency(10);
+		RemoteSessionStore<String> store = new RemoteSessionStore<>("s", 60_000, backend);
+		
+		String id = store.startSession("value");
+		assertNull(store.prefetch(id));
+		
+		RemoteSessionStore<String> other = new RemoteSessionStore<>("s", 60_000, backend);
+		other.prefetch(id).join();
+		assertNull(other.prefetch(id));
+		assertEquals("value", other.getSession(id).get());
+		
+		store.stopSession(id);
+		assertFalse(new RemoteSessionStore<>("s", 60_000, backend).getSession(id).isPresent());
+	}
+	
+	public void testRemoteWithoutBlocking() {
+		ManualBackend backend = new ManualBackend();
+		backend.values.put("id", "value");
+		
+		RemoteSessionStore<String> store = new RemoteSessionStore<>("s", 60_000, backend).setNearCache(100, 0);
+		
+		assertFalse(store.getSession("id", false).isPresent());
+		backend.complete();
+		
+		// stale sessions are served while being refreshed
+		backend.values.put("id", "changed");
+		assertEquals("value", store.getSession("id", false).get());
+		backend.complete();
+		assertEquals("changed", store.getSession("id", false).get());
+	}
+	
+	public void testRemoteStopWhileFetching() {
+		ManualBackend backend = new ManualBackend();
+		backend.values.put("id", "value");
+		
+		RemoteSessionStore<String> store = new RemoteSessionStore<>("s", 60_000, backend);
+		store.prefetch("id");
+		store.stopSession("id");
+		backend.complete();
+		
+		assertFalse(store.getSession("id", false).isPresent());
+		assertTrue(backend.pending.isEmpty());
+	}
+	
+	public void testRemoteNearCacheSize() {
+		ManualBackend backend = new ManualBackend();
+		RemoteSessionStore<String> store = new RemoteSessionStore<String>("s", 60_000, backend).setNearCache(10, 60_000);
+		List<String> ids = new ArrayList<>();
+		
+		for (int i = 0; i < 100; i++)
+			ids.add(store.startSession("value"));
+		
+		long cached = ids.stream().filter(id -> store.getSession(id, false).isPresent()).count();
+		
+		assertTrue(cached > 0);
+		assertTrue(cached <= 10);
+	}
+	
+	/**
+	 * Backend answering lookups only when told to
+	 */
+	private static class ManualBackend implements AsyncSessionStore<String> {
+		
+		private Map<String, String> values = new HashMap<>();
+		private List<Runnable> pending = new ArrayList<>();
+		
+		@Override
+		public CompletableFuture<Void> putSession(String id, String value, long lifetime) {
+			values.put(id, value);
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		@Override
+		public CompletableFuture<Void> removeSession(String id) {
+			values.remove(id);
+			return CompletableFuture.completedFuture(null);
+		}
+		
+		@Override
+		public CompletableFuture<Optional<String>> getSession(String id) {
+			Optional<String> value = Optional.ofNullable(values.get(id));
+			CompletableFuture<Optional<String>> future = new CompletableFuture<>();
+			
+			pending.add(() -> future.complete(value));
+			return future;
+		}
+		
+		private void complete() {
+			List<Runnable> completing = pending;
+			pending = new ArrayList<>();
+			completing.forEach(Runnable::run);
+		}
+		
+	}
+	
+	
+}
@@ -0,0 +1,92 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.lukasdietrich.lambdatra.NettyHandler;
+import com.lukasdietrich.lambdatra.ServerConfig;
+import com.lukasdietrich.lambdatra.routing.Route;
+import com.lukasdietrich.lambdatra.routing.Router;
+import com.lukasdietrich.lambdatra.session.DefaultSessionStore;
+
+public class CachedHttpAdapterTest extends TestCase {
+	
+	private int calls;
+	private List<Runnable> tasks;
+	
+	@Override
+	protected void setUp() {
+		calls = 0;
+		tasks = new ArrayList<>();
+	}
+	
+	private Router router(ResponseCache cache) {
+		Router router = new Router();
+		router.addRoute(new Route("/*", new CachedHttpAdapter<String>((req, res) -> res.write("call " + ++calls),
+				new DefaultSessionStore<>("s", 0), cache, tasks::add)));
+		return router;
+	}
+	
+	private static String get(Router router, String cookie) {
+		EmbeddedChannel channel = new EmbeddedChannel(new NettyHandler(router, new ServerConfig(), null));
+		DefaultFullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/a");
+		
+		if (cookie != null)
+			req.headers().set(Names.COOKIE, cookie);
+		
+		channel.writeInbound(req);
+		
+		StringBuilder body = new StringBuilder();
+		Object msg;
+		
+		while ((msg = channel.readOutbound()) != null) {
+			if (msg instanceof HttpContent)
+				body.append(((HttpContent) msg).content().toString(CharsetUtil.UTF_8));
+			
+			ReferenceCountUtil.release(msg);
+		}
+		
+		return body.toString();
+	}
+	
+	public void testRevalidation() {
+		Router router = router(new ResponseCache(1 << 20).setTtl(0).setStaleWhileRevalidate(60_000));
+		
+		assertEquals("call 1", get(router, null));
+		assertEquals("call 1", get(router, null));
+		assertEquals(1, calls);
+		assertEquals(1, tasks.size());
+		
+		tasks.remove(0).run();
+		assertEquals(2, calls);
+		assertEquals("call 2", get(router, null));
+	}
+	
+	public void testSessions() {
+		Router router = router(new ResponseCache(1 << 20));
+		
+		assertEquals("call 1", get(router, "s=a"));
+		assertEquals("call 2", get(router, "s=a"));
+		assertEquals("call 3", get(router, "other=a"));
+		assertEquals("call 3", get(router, null));
+		
+		router = router(new ResponseCache(1 << 20).setVary(Names.COOKIE));
+		
+		assertEquals("call 4", get(router, "s=a"));
+		assertEquals("call 5", get(router, "s=b"));
+		assertEquals("call 4", get(router, "s=a"));
+		assertTrue(tasks.isEmpty());
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import junit.framework.TestCase;
+
+import com.lukasdietrich.lambdatra.ConstantResponse;
+
+public class ResponseCacheTest extends TestCase {
+	
+	private static HttpRequest request(HttpMethod method, String uri) {
+		return new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+	}
+	
+	private static HttpResponse response(HttpResponseStatus status) {
+		return new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+	}
+	
+	private static ConstantResponse constant(ByteBuf body) {
+		return new ConstantResponse(response(HttpResponseStatus.OK), body, false);
+	}
+	
+	public void testKey() {
+		ResponseCache cache = new ResponseCache(1 << 20);
+		
+		assertEquals("/a?x=1&y=2", cache.key(request(HttpMethod.GET, "/a?x=1&y=2"), "/a"));
+		assertNull(cache.key(request(HttpMethod.POST, "/a"), "/a"));
+		
+		cache.setQuery("x");
+		assertEquals(cache.key(request(HttpMethod.GET, "/a?x=1&y=2"), "/a"),
+				cache.key(request(HttpMethod.GET, "/a?y=3&x=1"), "/a"));
+		assertFalse(cache.key(request(HttpMethod.GET, "/a?x=1"), "/a")
+				.equals(cache.key(request(HttpMethod.GET, "/a?x=2"), "/a")));
+		
+		cache.setVary(Names.ACCEPT_LANGUAGE);
+		HttpRequest de = request(HttpMethod.GET, "/a");
+		de.headers().set(Names.ACCEPT_LANGUAGE, "de");
+		HttpRequest en = request(HttpMethod.GET, "/a");
+		en.headers().set(Names.ACCEPT_LANGUAGE, "en");
+		
+		assertFalse(cache.key(de, "/a").equals(cache.key(en, "/a")));
+	}
+	
+	public void testCacheable() {
+		ResponseCache cache = new ResponseCache(1 << 20);
+		
+		assertTrue(cache.isCacheable(response(HttpResponseStatus.OK)));
+		assertFalse(cache.isCacheable(response(HttpResponseStatus.NOT_FOUND)));
+		
+		HttpResponse cookie = response(HttpResponseStatus.OK);
+		cookie.headers().set(Names.SET_COOKIE, "a=b");
+		assertFalse(cache.isCacheable(cookie));
+		
+		HttpResponse noStore = response(HttpResponseStatus.OK);
+		noStore.headers().set(Names.CACHE_CONTROL, "No-Store");
+		assertFalse(cache.isCacheable(noStore));
+		
+		HttpResponse personal = response(HttpResponseStatus.OK);
+		personal.headers().set(Names.CACHE_CONTROL, "private, max-age=60");
+		assertFalse(cache.isCacheable(personal));
+		
+		HttpResponse varied = response(HttpResponseStatus.OK);
+		varied.headers().set(Names.VARY, "Accept-Language");
+		assertFalse(cache.isCacheable(varied));
+		assertTrue(cache.setVary("accept-language").isCacheable(varied));
+	}
+	
+	public void testExpiry() throws InterruptedException {
+		ResponseCache cache = new ResponseCache(1 << 20).setTtl(100).setStaleWhileRevalidate(200);
+		ByteBuf body = Unpooled.copiedBuffer(new byte[10]);
+		
+		cache.put("/a", "/a", constant(body));
+		
+		ResponseCache.Entry entry = cache.get("/a");
+		assertNotNull(entry);
+		assertFalse(entry.revalidate());
+		assertEquals(2, body.refCnt());
+		entry.response.release();
+		
+		Thread.sleep(150);
+		
+		entry = cache.get("/a");
+		assertNotNull(entry);
+		assertTrue(entry.revalidate());
+		assertFalse(entry.revalidate());
+		entry.response.release();
+		
+		Thread.sleep(200);
+		
+		assertNull(cache.get("/a"));
+		assertEquals(0, cache.getSize());
+		assertEquals(0, body.refCnt());
+	}
+	
+	public void testEviction() throws InterruptedException {
+		ResponseCache cache = new ResponseCache(3 * (512 + 100));
+		ByteBuf[] bodies = new ByteBuf[4];
+		
+		for (int i = 0; i < 3; i++) {
+			bodies[i] = Unpooled.copiedBuffer(new byte[100]);
+			cache.put("/" + i, "/" + i, constant(bodies[i]));
+			Thread.sleep(5);
+		}
+		
+		cache.get("/0").response.release();
+		Thread.sleep(5);
+		
+		bodies[3] = Unpooled.copiedBuffer(new byte[100]);
+		cache.put("/3", "/3", constant(bodies[3]));
+		
+		assertEquals(3 * (512 + 100), cache.getSize());
+		assertNull(cache.get("/1"));
+		assertEquals(0, bodies[1].refCnt());
+		
+		for (int i : new int[] { 0, 2, 3 }) {
+			assertNotNull(cache.get("/" + i));
+			bodies[i].release();
+		}
+		
+		cache.invalidate("/0");
+		assertEquals(0, bodies[0].refCnt());
+		
+		cache.invalidateAll();
+		assertEquals(0, cache.getSize());
+		assertEquals(0, bodies[3].refCnt());
+		
+		ByteBuf huge = Unpooled.copiedBuffer(new byte[4096]);
+		cache.put("/huge", "/huge", constant(huge));
+		assertNull(cache.get("/huge"));
+		assertEquals(0, huge.refCnt());
+	}
+
+}
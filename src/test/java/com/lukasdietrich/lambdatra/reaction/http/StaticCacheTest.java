@@ -0,0 +1,72 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import junit.framework.TestCase;
+
+public class StaticCacheTest extends TestCase {
+	
+	private Path root;
+	
+	@Override
+	protected void setUp() throws IOException {
+		root = Files.createTempDirectory("lambdatra");
+		
+		for (int i = 0; i < 4; i++)
+			Files.write(root.resolve(i + ".txt"), new byte[100]);
+	}
+	
+	@Override
+	protected void tearDown() throws IOException {
+		for (File file : root.toFile().listFiles())
+			file.delete();
+		
+		Files.delete(root);
+	}
+	
+	private StaticFile load(StaticCache cache, int i) throws IOException {
+		return cache.load("/" + i, root.resolve(i + ".txt").toFile(), false);
+	}
+	
+	public void testEviction() throws Exception {
+		StaticCache cache = new StaticCache(root, 3 * (128 + 100));
+		StaticFile[] files = new StaticFile[4];
+		
+		for (int i = 0; i < 3; i++) {
+			files[i] = load(cache, i);
+			files[i].release();
+			Thread.sleep(5);
+		}
+		
+		cache.get("/0").release();
+		Thread.sleep(5);
+		
+		files[3] = load(cache, 3);
+		files[3].release();
+		
+		assertNull(cache.get("/1"));
+		assertEquals(0, files[1].content.refCnt());
+		
+		for (int i : new int[] { 0, 2, 3 }) {
+			assertSame(files[i], cache.get("/" + i));
+			assertEquals(2, files[i].content.refCnt());
+			files[i].release();
+		}
+	}
+	
+	public void testTryRetain() throws Exception {
+		StaticFile file = StaticFile.resolve(root.resolve("0.txt").toFile(), false, 1 << 20);
+		
+		assertTrue(file.tryRetain());
+		assertEquals(2, file.content.refCnt());
+		
+		file.release();
+		file.release();
+		assertFalse(file.tryRetain());
+		assertEquals(0, file.content.refCnt());
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.lukasdietrich.lambdatra.reaction.http;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders.Names;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class StaticFileTest extends TestCase {
+	
+	private File tmp;
+	private StaticFile file;
+	
+	@Override
+	protected void setUp() throws IOException {
+		tmp = File.createTempFile("lambdatra", ".txt");
+		Files.write(tmp.toPath(), new byte[100]);
+		tmp.setLastModified(1_000_000_000_000L);
+		
+		file = StaticFile.resolve(tmp, false, 1 << 20);
+	}
+	
+	@Override
+	protected void tearDown() {
+		file.release();
+		tmp.delete();
+	}
+	
+	private static WrappedRequest<Object> request(HttpMethod method, String... headers) {
+		HttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, "/");
+		
+		for (int i = 0; i < headers.length; i += 2)
+			req.headers().set(headers[i], headers[i + 1]);
+		
+		return new WrappedRequest<>(req, null, null);
+	}
+	
+	private static void assertRanges(String header, long length, long... expected) {
+		assertTrue(header, Arrays.equals(expected, StaticFile.parseRange(header, length)));
+	}
+	
+	public void testParseRange() {
+		assertRanges("bytes=0-9", 100, 0, 9);
+		assertRanges("BYTES=90-", 100, 90, 99);
+		assertRanges("bytes=90-200", 100, 90, 99);
+		assertRanges("bytes=-10", 100, 90, 99);
+		assertRanges("bytes=-200", 100, 0, 99);
+		assertRanges("bytes=0-0, 2-3 ,-1", 100, 0, 0, 2, 3, 99, 99);
+		
+		assertRanges("bytes=100-", 100);
+		assertRanges("bytes=-0", 100);
+		assertRanges("bytes=100-200, -0", 100);
+		
+		assertNull(StaticFile.parseRange("items=0-9", 100));
+		assertNull(StaticFile.parseRange("bytes=9-0", 100));
+		assertNull(StaticFile.parseRange("bytes=5", 100));
+		assertNull(StaticFile.parseRange("bytes=a-b", 100));
+		assertNull(StaticFile.parseRange("bytes=--1", 100));
+		
+		StringBuilder many = new StringBuilder("bytes=0-0");
+		
+		for (int i = 1; i <= 16; i++)
+			many.append(',').append(i).append('-').append(i);
+		
+		assertNull(StaticFile.parseRange(many.toString(), 100));
+	}
+	
+	public void testRanges() {
+		assertTrue(Arrays.equals(new long[] { 0, 9 },
+				file.ranges(request(HttpMethod.GET, Names.RANGE, "bytes=0-9"))));
+		assertTrue(Arrays.equals(new long[] { 0, 9 },
+				file.ranges(request(HttpMethod.GET, Names.RANGE, "bytes=0-9", Names.IF_RANGE, file.etag))));
+		assertTrue(Arrays.equals(new long[] { 0, 9 },
+				file.ranges(request(HttpMethod.GET, Names.RANGE, "bytes=0-9", Names.IF_RANGE, file.lastModified))));
+		
+		assertNull(file.ranges(request(HttpMethod.GET)));
+		assertNull(file.ranges(request(HttpMethod.HEAD, Names.RANGE, "bytes=0-9")));
+		assertNull(file.ranges(request(HttpMethod.GET, Names.RANGE, "bytes=0-9", Names.IF_RANGE, "\"other\"")));
+	}
+	
+	public void testNotModified() {
+		String weak = "W/" + file.etag;
+		
+		assertEquals("\"64-" + Long.toHexString(1_000_000_000_000L) + "\"", file.etag);
+		
+		assertTrue(file.isNotModified(request(HttpMethod.GET, Names.IF_NONE_MATCH, file.etag)));
+		assertTrue(file.isNotModified(request(HttpMethod.GET, Names.IF_NONE_MATCH, "\"other\", " + weak)));
+		assertTrue(file.isNotModified(request(HttpMethod.GET, Names.IF_NONE_MATCH, "*")));
+		assertFalse(file.isNotModified(request(HttpMethod.GET, Names.IF_NONE_MATCH, "\"other\"")));
+		assertFalse(file.isNotModified(request(HttpMethod.GET)));
+		
+		assertTrue(file.isNotModified(request(HttpMethod.GET, Names.IF_MODIFIED_SINCE, file.lastModified)));
+		assertTrue(file.isNotModified(request(HttpMethod.GET, Names.IF_MODIFIED_SINCE, "Sat, 01 Jan 2050 00:00:00 GMT")));
+		assertFalse(file.isNotModified(request(HttpMethod.GET, Names.IF_MODIFIED_SINCE, "Thu, 01 Jan 1970 00:00:00 GMT")));
+		assertFalse(file.isNotModified(request(HttpMethod.GET, Names.IF_MODIFIED_SINCE, "yesterday")));
+		
+		assertFalse(file.isNotModified(request(HttpMethod.GET,
+				Names.IF_NONE_MATCH, "\"other\"", Names.IF_MODIFIED_SINCE, file.lastModified)));
+	}
+
+}
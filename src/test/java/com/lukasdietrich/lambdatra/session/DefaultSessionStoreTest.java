@@ -0,0 +1,39 @@
+package com.lukasdietrich.lambdatra.session;
+
+import junit.framework.TestCase;
+
+public class DefaultSessionStoreTest extends TestCase {
+	
+	public void testExpiry() {
+		DefaultSessionStore<String> store = new DefaultSessionStore<>("s", 60_000);
+		store.close();
+		
+		for (int i = 0; i < 20; i++)
+			store.startSession("value");
+		
+		long started = System.currentTimeMillis();
+		
+		store.sweep(started + 30_000);
+		assertEquals(20, store.getSize());
+		
+		store.sweep(started + 61_000);
+		assertEquals(0, store.getSize());
+		assertEquals(20, store.getExpiredCount());
+	}
+	
+	public void testSweepBehindSchedule() {
+		DefaultSessionStore<String> store = new DefaultSessionStore<>("s", 60_000);
+		store.close();
+		
+		long started = System.currentTimeMillis();
+		store.sweep(started + 120_000);
+		
+		// expires in a bucket, that has already been swept
+		store.startSession("value");
+		store.sweep(started + 120_500);
+		
+		assertEquals(0, store.getSize());
+		assertEquals(1, store.getExpiredCount());
+	}
+
+}